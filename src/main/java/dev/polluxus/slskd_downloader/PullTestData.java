@@ -6,6 +6,7 @@ import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResp
 import dev.polluxus.slskd_downloader.config.Config;
 import dev.polluxus.slskd_downloader.infosupplier.AlbumInfoSupplier;
 import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
 import dev.polluxus.slskd_downloader.service.SlskdService;
 import dev.polluxus.slskd_downloader.store.FileBackedStore;
 import dev.polluxus.slskd_downloader.store.Store;
@@ -29,7 +30,9 @@ public class PullTestData {
         for (int i = 0; i < 400 && supplier.hasNext(); i++) {
 
             AlbumInfo curr = supplier.next();
-            List<SlskdSearchDetailResponse> res = slskdService.search(curr).join();
+            List<SlskdSearchDetailResponse> res = slskdService.search(curr).join().stream()
+                    .map(ProcessorInputUser::toResponse)
+                    .toList();
             final String name = STR."\{String.join("+", curr.artists())
                     .replaceAll(":", "-")
                     .replaceAll("/", "-")
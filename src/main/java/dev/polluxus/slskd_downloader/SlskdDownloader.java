@@ -7,11 +7,15 @@ import dev.polluxus.slskd_downloader.infosupplier.AlbumInfoSupplier;
 import dev.polluxus.slskd_downloader.model.AlbumInfo;
 import dev.polluxus.slskd_downloader.processor.ActiveDownloadProcessor;
 import dev.polluxus.slskd_downloader.processor.DownloadProcessor.DownloadResult;
+import dev.polluxus.slskd_downloader.processor.SearchResultConsumer;
+import dev.polluxus.slskd_downloader.processor.StreamingSearchProcessor;
 import dev.polluxus.slskd_downloader.processor.SlskdResponseProcessor;
 import dev.polluxus.slskd_downloader.processor.matcher.MatchStrategyType;
 import dev.polluxus.slskd_downloader.processor.model.output.ProcessorSearchResult;
 import dev.polluxus.slskd_downloader.service.DeduplicatorService;
 import dev.polluxus.slskd_downloader.service.SlskdService;
+import dev.polluxus.slskd_downloader.store.SearchResultCache;
+import dev.polluxus.slskd_downloader.util.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,7 +49,8 @@ public class SlskdDownloader {
         final SlskdService slskdService = new SlskdService(config).start();
         final Iterator<AlbumInfo> supplier = AlbumInfoSupplier.from(config);
 
-        final SlskdResponseProcessor processor = SlskdResponseProcessor.from(config, MatchStrategyType.EDIT_DISTANCE);
+        final int maxResults = config.processorMaxResults() > 0 ? config.processorMaxResults() : ActiveDownloadProcessor.MAX_RESULTS;
+        final SlskdResponseProcessor processor = SlskdResponseProcessor.from(config, MatchStrategyType.EDIT_DISTANCE, maxResults);
         final DeduplicatorService deduplicatorService = new DeduplicatorService(PlexClient.create(config));
 //        final DownloadProcessor downloadProcessor = new DownloadProcessor(slskdService, new UnattendedDecisionMaker());
 
@@ -66,12 +71,14 @@ public class SlskdDownloader {
                                 Iterator<AlbumInfo> albumInfos,
                                 SlskdService service,
                                 SlskdResponseProcessor processor,
-                                Supplier<Function<ProcessorSearchResult, CompletableFuture<DownloadResult>>> consumer,
+                                Supplier<? extends SearchResultConsumer> consumer,
                                 Predicate<AlbumInfo> shouldDownload,
                                 Predicate<AlbumInfo> skipWhile) {
 
         log.info("Beginning iteration of album information");
         final Map<AlbumInfo, CompletableFuture<DownloadResult>> allRequests = new HashMap<>();
+        // Different sources can produce the same album. Only attempt each one once per run.
+        final SingleFlight<String, DownloadResult> albumFlights = SingleFlight.retainingForever();
         boolean skipping = true;
         while (albumInfos.hasNext()) {
             var ai = albumInfos.next();
@@ -83,17 +90,22 @@ public class SlskdDownloader {
                 log.info("Skipping download request {}", ai.searchString());
                 continue;
             }
-            final var doneFuture = service.search(ai)
-                    .thenApply(l -> processor.process(l, ai))
-                    .thenCompose(r -> consumer.get().apply(r))
-                    .exceptionally(t -> {
-                        log.error("Handling exception in pipeline not caught by more specific handler", t);
-                        return DownloadResult.TRIED_FAILED;
-                    });
+            final var doneFuture = albumFlights.run(SearchResultCache.normalize(ai.searchString()), () -> {
+                final SearchResultConsumer downloader = consumer.get();
+                final StreamingSearchProcessor streamingProcessor = new StreamingSearchProcessor(processor, ai, downloader);
+                return service.search(ai, streamingProcessor)
+                        .thenApply(streamingProcessor::finish)
+                        .thenCompose(downloader)
+                        .exceptionally(t -> {
+                            log.error("Handling exception in pipeline not caught by more specific handler", t);
+                            return DownloadResult.TRIED_FAILED;
+                        });
+            });
             allRequests.put(ai, doneFuture);
         }
         CompletableFuture.allOf(allRequests.values().toArray(CompletableFuture[]::new)).join();
-        log.info("All requests done.");
+        log.info("All requests done. Coalesced {} duplicate album requests and {} duplicate searches.",
+                albumFlights.absorbed(), service.coalescedSearches());
         return allRequests;
     }
 
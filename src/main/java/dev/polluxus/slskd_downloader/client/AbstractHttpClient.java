@@ -3,21 +3,44 @@ package dev.polluxus.slskd_downloader.client;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.polluxus.slskd_downloader.config.ThreadPoolConfig;
+import org.apache.hc.client5.http.async.HttpAsyncClient;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
 import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public abstract class AbstractHttpClient {
 
     protected final HttpClient client;
+    // Used for the async variants of the request methods if set, otherwise they run the classic client on a virtual thread
+    @Nullable
+    protected final HttpAsyncClient asyncClient;
     protected final ObjectMapper mapper;
 
     public AbstractHttpClient(HttpClient client, ObjectMapper mapper) {
+        this(client, null, mapper);
+    }
+
+    public AbstractHttpClient(HttpClient client, @Nullable HttpAsyncClient asyncClient, ObjectMapper mapper) {
         this.client = client;
+        this.asyncClient = asyncClient;
         this.mapper = mapper;
     }
 
@@ -33,7 +56,7 @@ public abstract class AbstractHttpClient {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            throw new RuntimeException(STR."Expected status code \{expected}, but got \{resp.getCode()}: \{body}");
+            throw new HttpStatusException(resp.getCode(), STR."Expected status code \{expected}, but got \{resp.getCode()}: \{body}");
         }
     }
 
@@ -67,6 +90,105 @@ public abstract class AbstractHttpClient {
         });
     }
 
+    protected <T> CompletableFuture<T> doRequestAsync(final ClassicHttpRequest req, final Class<T> klazz) {
+
+        return doRequestAsync(req, 200, klazz);
+    }
+
+    protected <T> CompletableFuture<T> doRequestAsync(final ClassicHttpRequest req, final TypeReference<T> typeReference) {
+
+        return doRequestAsync(req, 200, typeReference);
+    }
+
+    protected <T> CompletableFuture<T> doRequestAsync(final ClassicHttpRequest req, final int expectedStatus, final Class<T> klazz) {
+
+        return executeAsync(req, resp -> {
+            validateStatusCode(expectedStatus, resp);
+            if (klazz == Void.class) {
+                return null;
+            }
+            return readValueUnchecked(resp.getBodyBytes(), klazz);
+        });
+    }
+
+    protected <T> CompletableFuture<T> doRequestAsync(final ClassicHttpRequest req, final int expectedStatus, final TypeReference<T> typeReference) {
+
+        return executeAsync(req, resp -> {
+            validateStatusCode(expectedStatus, resp);
+            return readValueUnchecked(resp.getBodyBytes(), typeReference);
+        });
+    }
+
+    protected void validateStatusCode(final int expected, final SimpleHttpResponse resp) {
+
+        if (resp.getCode() != expected) {
+            final String body = resp.getBodyBytes() != null ? new String(resp.getBodyBytes()) : "<not available>";
+            throw new HttpStatusException(resp.getCode(), STR."Expected status code \{expected}, but got \{resp.getCode()}: \{body}");
+        }
+    }
+
+    /**
+     * Sends the request without holding a thread while waiting for the response, then passes the (fully
+     * read) response to {@code handler}. Falls back to the classic client if there's no async one.
+     */
+    protected <T> CompletableFuture<T> executeAsync(final ClassicHttpRequest req, final Function<SimpleHttpResponse, T> handler) {
+
+        if (asyncClient == null) {
+            return CompletableFuture.supplyAsync(() -> executeUnchecked(req, resp -> {
+                final HttpEntity entity = resp.getEntity();
+                final SimpleHttpResponse simple = new SimpleHttpResponse(resp.getCode());
+                if (entity != null) {
+                    simple.setBody(EntityUtils.toByteArray(entity), ContentType.parseLenient(entity.getContentType()));
+                }
+                return handler.apply(simple);
+            }), ThreadPoolConfig.VIRTUAL_THREAD_EXECUTOR);
+        }
+
+        final CompletableFuture<SimpleHttpResponse> response = new CompletableFuture<>();
+        asyncClient.execute(
+                SimpleRequestProducer.create(toSimpleRequest(req)),
+                SimpleResponseConsumer.create(),
+                null,
+                HttpClientContext.create(),
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(SimpleHttpResponse result) {
+                        response.complete(result);
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        response.completeExceptionally(ex);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        response.cancel(false);
+                    }
+                });
+        return response.thenApply(handler);
+    }
+
+    private static SimpleHttpRequest toSimpleRequest(final ClassicHttpRequest req) {
+
+        final SimpleHttpRequest simple;
+        try {
+            simple = new SimpleHttpRequest(req.getMethod(), req.getUri());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+        simple.setHeaders(req.getHeaders());
+        final HttpEntity entity = req.getEntity();
+        if (entity != null) {
+            try {
+                simple.setBody(EntityUtils.toByteArray(entity), ContentType.parseLenient(entity.getContentType()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return simple;
+    }
+
     protected <T> T executeUnchecked(ClassicHttpRequest req, HttpClientResponseHandler<T> handler) {
 
         try {
@@ -85,6 +207,24 @@ public abstract class AbstractHttpClient {
         }
     }
 
+    protected <T> T readValueUnchecked(final byte[] bytes, Class<T> klazz) {
+
+        try {
+            return mapper.readValue(bytes, klazz);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected <T> T readValueUnchecked(final byte[] bytes, TypeReference<T> klazz) {
+
+        try {
+            return mapper.readValue(bytes, klazz);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     protected <T> T readValueUnchecked(final InputStream in, TypeReference<T> klazz) {
 
         try {
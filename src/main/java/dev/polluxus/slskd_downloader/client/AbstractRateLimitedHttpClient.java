@@ -1,6 +1,8 @@
 package dev.polluxus.slskd_downloader.client;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hc.client5.http.async.HttpAsyncClient;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
 import org.apache.hc.client5.http.classic.HttpClient;
 import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
@@ -8,6 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class AbstractRateLimitedHttpClient extends AbstractHttpClient {
 
@@ -20,6 +24,10 @@ public class AbstractRateLimitedHttpClient extends AbstractHttpClient {
         super(client, mapper);
     }
 
+    public AbstractRateLimitedHttpClient(HttpClient client, HttpAsyncClient asyncClient, ObjectMapper mapper) {
+        super(client, asyncClient, mapper);
+    }
+
     protected void acquireLock() {
 
         final long now = System.currentTimeMillis();
@@ -36,6 +44,17 @@ public class AbstractRateLimitedHttpClient extends AbstractHttpClient {
         lockedUntil = System.currentTimeMillis() + LOCK_DURATION;
     }
 
+    @Override
+    protected <T> CompletableFuture<T> executeAsync(ClassicHttpRequest req, Function<SimpleHttpResponse, T> handler) {
+
+        // Without an async client, this ends up in executeUnchecked, which takes the lock itself
+        if (asyncClient != null) {
+            acquireLock();
+            log.debug("{}", req.getRequestUri());
+        }
+        return super.executeAsync(req, handler);
+    }
+
     protected <T> T executeUnchecked(ClassicHttpRequest req, HttpClientResponseHandler<T> handler) {
 
         try {
@@ -0,0 +1,18 @@
+package dev.polluxus.slskd_downloader.client;
+
+/**
+ * Thrown when a server responds with a status code other than the one expected.
+ */
+public class HttpStatusException extends RuntimeException {
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+}
@@ -5,13 +5,13 @@ import dev.polluxus.slskd_downloader.client.AbstractRateLimitedHttpClient;
 import dev.polluxus.slskd_downloader.client.musicbrainz.dto.MusicbrainzRecording;
 import dev.polluxus.slskd_downloader.client.musicbrainz.dto.MusicbrainzReleaseSearchResult.MusicbrainzRelease;
 import dev.polluxus.slskd_downloader.config.Config;
+import dev.polluxus.slskd_downloader.config.HttpClientConfig;
 import dev.polluxus.slskd_downloader.client.musicbrainz.dto.MusicbrainzReleaseSearchResult;
 import dev.polluxus.slskd_downloader.config.JacksonConfig;
 import dev.polluxus.slskd_downloader.config.UoeDefaultConfig;
 import dev.polluxus.slskd_downloader.store.FileBackedStore;
 import dev.polluxus.slskd_downloader.store.Store;
 import org.apache.hc.client5.http.classic.HttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
@@ -57,7 +57,7 @@ public class MusicbrainzClient extends AbstractRateLimitedHttpClient {
     }
 
     public static MusicbrainzClient create(Config config) {
-        final HttpClient client = HttpClientBuilder.create().build();
+        final HttpClient client = HttpClientConfig.pooledClient();
         final FileBackedStore<MusicbrainzReleaseSearchResult> searchStore = FileBackedStore.from(config, MusicbrainzReleaseSearchResult.class);
         final FileBackedStore<MusicbrainzRecording> mbRecordingStore = FileBackedStore.from(config, MusicbrainzRecording.class);
         final ObjectMapper mapper = JacksonConfig.MAPPER;
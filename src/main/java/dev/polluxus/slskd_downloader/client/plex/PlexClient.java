@@ -3,8 +3,8 @@ package dev.polluxus.slskd_downloader.client.plex;
 import dev.polluxus.slskd_downloader.client.AbstractHttpClient;
 import dev.polluxus.slskd_downloader.client.plex.response.PlexSearchResponse;
 import dev.polluxus.slskd_downloader.config.Config;
+import dev.polluxus.slskd_downloader.config.HttpClientConfig;
 import dev.polluxus.slskd_downloader.config.JacksonConfig;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,7 +21,7 @@ public class PlexClient extends AbstractHttpClient {
     private final String librarySectionId;
 
     public PlexClient(String baseUrl, String plexToken, String librarySectionId) {
-        super(HttpClients.createDefault(), JacksonConfig.MAPPER);
+        super(HttpClientConfig.pooledClient(), JacksonConfig.MAPPER);
         this.baseUrl = baseUrl;
         this.plexToken = plexToken;
         this.librarySectionId = librarySectionId;
@@ -0,0 +1,154 @@
+package dev.polluxus.slskd_downloader.client.slskd;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputDirectory;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser.DirectoryGrouper;
+import dev.polluxus.slskd_downloader.processor.model.input.SearchStringTable;
+import dev.polluxus.slskd_downloader.util.AudioFiles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Reads the responses to a search token by token, straight into processor input. Only unlocked audio
+ * files are kept, and they're grouped by directory as they're read, so the (often very large) full
+ * response never has to be held in memory. Users left with no files are dropped entirely. Paths and names
+ * are interned across the whole search, since many users share the same albums.
+ */
+public class SearchResponseDecoder {
+
+    private final JsonFactory factory;
+
+    public SearchResponseDecoder(ObjectMapper mapper) {
+        this.factory = mapper.getFactory();
+    }
+
+    /**
+     * @param users the users that were kept
+     * @param responseCount how many responses there were in total, including those that were skipped or dropped
+     */
+    public record Decoded(List<ProcessorInputUser> users, int responseCount) {}
+
+    public List<ProcessorInputUser> decode(final InputStream in) throws IOException {
+
+        return decode(in, 0).users();
+    }
+
+    /**
+     * Like {@link #decode(InputStream)}, but passes over the first {@code skip} responses without decoding them.
+     * slskd only ever appends to a search's responses, so this skips those already seen by an earlier call.
+     */
+    public Decoded decode(final InputStream in, final int skip) throws IOException {
+
+        try (JsonParser p = factory.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException(STR."Expected an array of search responses, but got \{p.currentToken()}");
+            }
+            final SearchStringTable strings = new SearchStringTable();
+            final List<ProcessorInputUser> users = new ArrayList<>();
+            int responseCount = 0;
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                if (responseCount++ < skip) {
+                    p.skipChildren();
+                    continue;
+                }
+                final ProcessorInputUser user = readUser(p, strings);
+                if (!user.directories().isEmpty()) {
+                    users.add(user);
+                }
+            }
+            return new Decoded(users, responseCount);
+        }
+    }
+
+    private static ProcessorInputUser readUser(final JsonParser p, final SearchStringTable strings) throws IOException {
+
+        int fileCount = 0;
+        boolean hasFreeUploadSlot = false;
+        int lockedFileCount = 0;
+        int queueLength = 0;
+        int token = 0;
+        int uploadSpeed = 0;
+        String username = null;
+        final DirectoryGrouper grouper = new DirectoryGrouper(strings);
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "fileCount" -> fileCount = p.getValueAsInt();
+                case "hasFreeUploadSlot" -> hasFreeUploadSlot = p.getValueAsBoolean();
+                case "lockedFileCount" -> lockedFileCount = p.getValueAsInt();
+                case "queueLength" -> queueLength = p.getValueAsInt();
+                case "token" -> token = p.getValueAsInt();
+                case "uploadSpeed" -> uploadSpeed = p.getValueAsInt();
+                case "username" -> username = p.getValueAsString();
+                case "files" -> readFiles(p, grouper);
+                // Including lockedFiles, which can't be downloaded anyway
+                default -> p.skipChildren();
+            }
+        }
+
+        final SlskdSearchDetailResponse originalData = new SlskdSearchDetailResponse(fileCount, hasFreeUploadSlot,
+                lockedFileCount, List.of(), queueLength, token, uploadSpeed, username, List.of());
+        return new ProcessorInputUser(originalData, grouper.build());
+    }
+
+    private static void readFiles(final JsonParser p, final DirectoryGrouper grouper) throws IOException {
+
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return;
+        }
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+            readFile(p, grouper);
+        }
+    }
+
+    /**
+     * Adds the file to its directory, unless it's locked or not audio.
+     */
+    private static void readFile(final JsonParser p, final DirectoryGrouper grouper) throws IOException {
+
+        int code = 0;
+        String extension = null;
+        String filename = null;
+        long size = 0;
+        boolean isLocked = false;
+        int bitDepth = ProcessorInputDirectory.ABSENT;
+        int bitRate = ProcessorInputDirectory.ABSENT;
+        int length = ProcessorInputDirectory.ABSENT;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "code" -> code = p.getValueAsInt();
+                case "extension" -> extension = p.getValueAsString();
+                case "filename" -> filename = p.getValueAsString();
+                case "size" -> size = p.getValueAsLong();
+                case "isLocked" -> isLocked = p.getValueAsBoolean();
+                case "bitDepth" -> bitDepth = optionalInt(p);
+                case "bitRate" -> bitRate = optionalInt(p);
+                case "length" -> length = optionalInt(p);
+                default -> p.skipChildren();
+            }
+        }
+
+        if (isLocked || filename == null || !AudioFiles.isAudio(filename)) {
+            return;
+        }
+        grouper.add(code, extension, filename, size, false, bitDepth, bitRate, length);
+    }
+
+    private static int optionalInt(final JsonParser p) throws IOException {
+
+        return p.currentToken() == JsonToken.VALUE_NULL ? ProcessorInputDirectory.ABSENT : p.getValueAsInt();
+    }
+}
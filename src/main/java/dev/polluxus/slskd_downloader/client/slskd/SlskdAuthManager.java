@@ -0,0 +1,165 @@
+package dev.polluxus.slskd_downloader.client.slskd;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdLoginResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a valid slskd token to hand. The token is refreshed in the background a while before it expires,
+ * so requests normally never wait on a login. If one does have to log in, because the token has expired or
+ * been rejected, any other callers that turn up meanwhile wait on the same login rather than starting their own.
+ */
+class SlskdAuthManager implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SlskdAuthManager.class);
+
+    // Package-private constants, may be used in tests
+    static final long DEFAULT_REFRESH_AHEAD_MILLIS = 5 * 60 * 1000;
+    // Tokens this close to expiring are treated as expired, so they don't run out in flight
+    static final long EXPIRY_MARGIN_MILLIS = 10_000;
+    static final long REFRESH_RETRY_MILLIS = 30_000;
+
+    record SlskdToken(
+            // Token expiry time in Unix seconds
+            long expires,
+            // The token value
+            String token,
+            // The token type, i.e. Bearer
+            String tokenType
+    ) {
+        String headerValue() {
+            return tokenType + " " + token;
+        }
+
+        long expiresMillis() {
+            return expires * 1000;
+        }
+    }
+
+    private final Supplier<SlskdLoginResponse> login;
+    private final long refreshAheadMillis;
+    private final ScheduledExecutorService refresher;
+
+    private volatile SlskdToken token;
+    // The login in progress, if any. Guarded by 'this'.
+    private CompletableFuture<SlskdToken> inFlight;
+
+    SlskdAuthManager(Supplier<SlskdLoginResponse> login, long refreshAheadMillis) {
+        this.login = login;
+        this.refreshAheadMillis = refreshAheadMillis;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "slskd-token-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return a token that is valid for at least a little while longer, logging in first if there isn't one
+     */
+    SlskdToken token() {
+
+        final SlskdToken current = token;
+        if (current != null && current.expiresMillis() - EXPIRY_MARGIN_MILLIS > System.currentTimeMillis()) {
+            return current;
+        }
+        return login(false);
+    }
+
+    /**
+     * Discards {@code rejected}, e.g. because slskd responded with 401 to it, unless it has already been replaced.
+     */
+    synchronized void invalidate(SlskdToken rejected) {
+
+        if (token == rejected) {
+            token = null;
+        }
+    }
+
+    /**
+     * @param force whether to log in even if the current token is still valid
+     */
+    private SlskdToken login(boolean force) {
+
+        final CompletableFuture<SlskdToken> mine;
+        final boolean leader;
+        synchronized (this) {
+            // Someone may have logged in while we were waiting for the lock
+            final SlskdToken current = token;
+            if (!force && current != null && current.expiresMillis() - EXPIRY_MARGIN_MILLIS > System.currentTimeMillis()) {
+                return current;
+            }
+            leader = inFlight == null;
+            if (leader) {
+                inFlight = new CompletableFuture<>();
+            }
+            mine = inFlight;
+        }
+        if (!leader) {
+            try {
+                return mine.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        try {
+            final SlskdLoginResponse resp = login.get();
+            final SlskdToken fresh = new SlskdToken(resp.expires(), resp.token(), resp.tokenType());
+            synchronized (this) {
+                token = fresh;
+                inFlight = null;
+            }
+            mine.complete(fresh);
+            scheduleRefresh(fresh);
+            return fresh;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                inFlight = null;
+            }
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void scheduleRefresh(SlskdToken current) {
+
+        final long lifetime = current.expiresMillis() - System.currentTimeMillis();
+        // Short-lived tokens are refreshed halfway through instead
+        final long delay = Math.max(0, lifetime > 2 * refreshAheadMillis ? lifetime - refreshAheadMillis : lifetime / 2);
+        schedule(() -> refresh(current), delay);
+    }
+
+    private void refresh(SlskdToken expiring) {
+
+        // Already replaced, e.g. after a 401, in which case that login has scheduled its own refresh
+        if (token != expiring) {
+            return;
+        }
+        // Requests carry on using the old token while this happens
+        try {
+            login(true);
+            log.debug("Refreshed slskd token ahead of expiry");
+        } catch (RuntimeException e) {
+            log.warn("Error refreshing slskd token, trying again in {}ms", REFRESH_RETRY_MILLIS, e);
+            schedule(() -> refresh(expiring), REFRESH_RETRY_MILLIS);
+        }
+    }
+
+    private void schedule(Runnable task, long delayMillis) {
+
+        try {
+            refresher.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
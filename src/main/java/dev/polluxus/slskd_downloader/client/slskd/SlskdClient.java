@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import dev.polluxus.slskd_downloader.client.AbstractHttpClient;
+import dev.polluxus.slskd_downloader.client.HttpStatusException;
 import dev.polluxus.slskd_downloader.client.slskd.request.SlskdDownloadRequest;
 import dev.polluxus.slskd_downloader.client.slskd.request.SlskdLoginRequest;
 import dev.polluxus.slskd_downloader.client.slskd.request.SlskdSearchRequest;
@@ -12,17 +13,25 @@ import dev.polluxus.slskd_downloader.client.slskd.response.SlskdLoginResponse;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchStateResponse;
 import dev.polluxus.slskd_downloader.config.Config;
+import dev.polluxus.slskd_downloader.config.HttpClientConfig;
 import dev.polluxus.slskd_downloader.config.JacksonConfig;
+import dev.polluxus.slskd_downloader.config.ThreadPoolConfig;
 import dev.polluxus.slskd_downloader.config.UoeDefaultConfig;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import org.apache.hc.client5.http.async.HttpAsyncClient;
 import org.apache.hc.client5.http.classic.HttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 public class SlskdClient extends AbstractHttpClient {
 
@@ -34,20 +43,8 @@ public class SlskdClient extends AbstractHttpClient {
     private final String username;
     private final String password;
 
-    private SlskdToken token;
-
-    private record SlskdToken(
-            // Token expiry time in Unix seconds
-            int expires,
-            // The token value
-            String token,
-            // The token type, i.e. Bearer
-            String tokenType
-    ) {
-        String headerValue() {
-            return tokenType + " " + token;
-        }
-    }
+    private final SlskdAuthManager auth;
+    private final SearchResponseDecoder searchResponseDecoder;
 
     public static void main(String[] args) {
         final var c = create(new UoeDefaultConfig() {
@@ -77,28 +74,73 @@ public class SlskdClient extends AbstractHttpClient {
         log.info("Stop");
     }
 
-    private SlskdClient(String baseUrl, String username, String password, HttpClient client, ObjectMapper mapper) {
-        super(client, mapper);
+    private SlskdClient(String baseUrl, String username, String password, HttpClient client, HttpAsyncClient asyncClient,
+                        ObjectMapper mapper) {
+        super(client, asyncClient, mapper);
         this.baseUrl = baseUrl;
         this.username = username;
         this.password = password;
+        this.auth = new SlskdAuthManager(this::login, SlskdAuthManager.DEFAULT_REFRESH_AHEAD_MILLIS);
+        this.searchResponseDecoder = new SearchResponseDecoder(mapper);
+    }
+
+    /**
+     * @return a currently valid token, for authenticating with slskd outside of this client
+     */
+    String accessToken() {
+        return auth.token().token();
     }
 
-    private void ensureAuthValid() {
-        if (token == null || token.expires <= System.currentTimeMillis() / 1000) {
-            final SlskdLoginResponse loginResponse = login();
-            this.token = new SlskdToken(loginResponse.expires(), loginResponse.token(), loginResponse.tokenType());
+    /**
+     * Makes a request with the current token in the Authorization header. If slskd rejects the token, which
+     * can happen e.g. if it was restarted, the request is made again once with a fresh one.
+     */
+    private <T> T authenticated(final ClassicHttpRequest req, final Function<ClassicHttpRequest, T> send) {
+
+        final SlskdAuthManager.SlskdToken token = auth.token();
+        req.setHeader("Authorization", token.headerValue());
+        try {
+            return send.apply(req);
+        } catch (HttpStatusException e) {
+            if (e.statusCode() != 401) {
+                throw e;
+            }
+            log.info("Slskd rejected our token, logging in again");
+            auth.invalidate(token);
+            req.setHeader("Authorization", auth.token().headerValue());
+            return send.apply(req);
         }
     }
 
+    private <T> CompletableFuture<T> authenticatedAsync(final ClassicHttpRequest req,
+                                                        final Function<ClassicHttpRequest, CompletableFuture<T>> send) {
+
+        final SlskdAuthManager.SlskdToken token = auth.token();
+        req.setHeader("Authorization", token.headerValue());
+        // Logging in again blocks, so it mustn't happen on the async client's I/O thread, which would hold up
+        // every other request in flight
+        return send.apply(req).exceptionallyComposeAsync(t -> {
+            final Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+            if (!(cause instanceof HttpStatusException e) || e.statusCode() != 401) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            log.info("Slskd rejected our token, logging in again");
+            auth.invalidate(token);
+            req.setHeader("Authorization", auth.token().headerValue());
+            return send.apply(req);
+        }, ThreadPoolConfig.VIRTUAL_THREAD_EXECUTOR);
+    }
+
     public static SlskdClient create(Config config) {
 
-        final HttpClient client = HttpClientBuilder.create().build();
+        final HttpClient client = HttpClientConfig.pooledClient();
+        final HttpAsyncClient asyncClient = HttpClientConfig.pooledAsyncClient();
         final ObjectMapper mapper = JacksonConfig.MAPPER
                 ;
         final SlskdClient ret = new SlskdClient(
-                config.slskdBaseUrl(), config.slskdUsername(), config.slskdPassword(), client, mapper);
-        ret.ensureAuthValid();
+                config.slskdBaseUrl(), config.slskdUsername(), config.slskdPassword(), client, asyncClient, mapper);
+        // Log in straight away, so bad credentials are noticed up front
+        ret.auth.token();
         return ret;
     }
 
@@ -106,69 +148,110 @@ public class SlskdClient extends AbstractHttpClient {
 
         log.info("Getting all search states from Slskd");
 
-        ensureAuthValid();
         final var req = ClassicRequestBuilder.get(STR."\{baseUrl}\{API_PREFIX}/searches")
-                .addHeader("Authorization", token.headerValue())
                 .build();
-        return doRequest(req, new TypeReference<>() {});
+        return authenticated(req, r -> doRequest(r, new TypeReference<>() {}));
     }
 
     public SlskdSearchStateResponse getSearchState(UUID id) {
 
-        ensureAuthValid();
         final var req = ClassicRequestBuilder.get(STR."\{baseUrl}\{API_PREFIX}/searches/\{id}")
-                .addHeader("Authorization", token.headerValue())
                 .build();
-        return doRequest(req, SlskdSearchStateResponse.class);
+        return authenticated(req, r -> doRequest(r, SlskdSearchStateResponse.class));
     }
 
     public List<SlskdSearchDetailResponse> getSearchResponses(UUID id) {
 
-        ensureAuthValid();
         final var req = ClassicRequestBuilder.get(STR."\{baseUrl}\{API_PREFIX}/searches/\{id}/responses")
-                .addHeader("Authorization", token.headerValue())
                 .build();
-        return doRequest(req, new TypeReference<>() {});
+        return authenticated(req, r -> doRequest(r, new TypeReference<>() {}));
+    }
+
+    /**
+     * Like {@link #getSearchResponses(UUID)}, but decodes the responses while they're read, keeping only the
+     * unlocked audio files, already grouped by directory.
+     */
+    public List<ProcessorInputUser> getSearchInputs(UUID id) {
+
+        return getSearchInputs(id, 0).users();
+    }
+
+    /**
+     * Like {@link #getSearchInputs(UUID)}, but without decoding the first {@code skip} responses, which an
+     * earlier call has already seen.
+     */
+    public SearchResponseDecoder.Decoded getSearchInputs(UUID id, int skip) {
+
+        final var req = ClassicRequestBuilder.get(STR."\{baseUrl}\{API_PREFIX}/searches/\{id}/responses")
+                .build();
+        return authenticated(req, r -> executeUnchecked(r, resp -> {
+            validateStatusCode(200, resp);
+            return searchResponseDecoder.decode(resp.getEntity().getContent(), skip);
+        }));
     }
 
     public List<SlskdGetDownloadResponse> getAllDownloads() {
 
-        ensureAuthValid();
         final var req = ClassicRequestBuilder.get(STR."\{baseUrl}\{API_PREFIX}/transfers/downloads")
-                .addHeader("Authorization", token.headerValue())
                 .build();
-        return doRequest(req, new TypeReference<>() {});
+        return authenticated(req, r -> doRequest(r, new TypeReference<>() {}));
+    }
+
+    /**
+     * Gets the downloads from a single user, which is much cheaper than {@link #getAllDownloads()} once slskd
+     * has built up a transfer history. Doesn't hold a thread while waiting for slskd.
+     *
+     * @return the user's downloads, or empty if there aren't any
+     */
+    public CompletableFuture<Optional<SlskdGetDownloadResponse>> getDownloadsFromUserAsync(final String hostUser) {
+
+        final var req = ClassicRequestBuilder.get(STR."\{baseUrl}\{API_PREFIX}/transfers/downloads/\{hostUser}")
+                .build();
+        return authenticatedAsync(req, r -> executeAsync(r, resp -> {
+            // slskd responds with not found when there's nothing from this user
+            if (resp.getCode() == 404) {
+                return Optional.empty();
+            }
+            validateStatusCode(200, resp);
+            return Optional.of(readValueUnchecked(resp.getBodyBytes(), SlskdGetDownloadResponse.class));
+        }));
     }
 
     public SlskdSearchStateResponse search(String searchText) {
 
-        ensureAuthValid();
         final var req = ClassicRequestBuilder.post(STR."\{baseUrl}\{API_PREFIX}/searches")
-                .addHeader("Authorization", token.headerValue())
                 .setEntity(writeValueAsBytesUnchecked(new SlskdSearchRequest(searchText)), ContentType.APPLICATION_JSON)
                 .build();
-        return doRequest(req, SlskdSearchStateResponse.class);
+        return authenticated(req, r -> doRequest(r, SlskdSearchStateResponse.class));
+    }
+
+    public void stopSearch(final UUID id) {
+
+        final var req = ClassicRequestBuilder.put(STR."\{baseUrl}\{API_PREFIX}/searches/\{id}")
+                .build();
+        try {
+            authenticated(req, r -> doRequest(r, 204, Void.class));
+        } catch (Exception e) {
+            // The search may well have completed by itself in the meantime
+            log.warn("Error stopping search {}", id, e);
+        }
     }
 
     public void initiateDownloads(final String hostUser, final List<SlskdDownloadRequest> files) {
 
-        ensureAuthValid();
         final var req = ClassicRequestBuilder.post(STR."\{baseUrl}\{API_PREFIX}/transfers/downloads/\{hostUser}")
-                .addHeader("Authorization", token.headerValue())
                 .setEntity(writeValueAsBytesUnchecked(files), ContentType.APPLICATION_JSON)
                 .build();
-        doRequest(req, 201, Void.class);
+        authenticated(req, r -> doRequest(r, 201, Void.class));
     }
 
     public void cancelDownload(final String hostUser, final UUID fileId, boolean remove) {
 
-        ensureAuthValid();
         final var req =
                 ClassicRequestBuilder.delete(STR."\{baseUrl}\{API_PREFIX}/transfers/downloads/\{hostUser}/\{fileId}?remove=\{remove}")
-                        .addHeader("Authorization", token.headerValue())
                         .build();
         try {
-            doRequest(req, 204, Void.class);
+            authenticated(req, r -> doRequest(r, 204, Void.class));
         } catch (Exception e) {
             log.error("Error {} download from user {} id {}", remove ? "removing" : "cancelling", hostUser, fileId, e);
         }
@@ -0,0 +1,300 @@
+package dev.polluxus.slskd_downloader.client.slskd;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchStateResponse;
+import dev.polluxus.slskd_downloader.config.Config;
+import dev.polluxus.slskd_downloader.config.JacksonConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Receives search updates as they happen from slskd's real-time search hub, which speaks the SignalR JSON
+ * protocol over a WebSocket. slskd doesn't publish transfer updates over a hub, so those still have to be polled.
+ * <p>
+ * The connection is re-established whenever it drops. While it's down, {@link #isConnected()} is false and
+ * callers should fall back to polling the REST API.
+ */
+public class SlskdEventClient implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SlskdEventClient.class);
+
+    // Terminates every SignalR message
+    private static final char RECORD_SEPARATOR = '\u001e';
+    private static final String HANDSHAKE = STR."{\"protocol\":\"json\",\"version\":1}\{RECORD_SEPARATOR}";
+    private static final String PING = STR."{\"type\":6}\{RECORD_SEPARATOR}";
+
+    // Package-private constants, may be used in tests
+    static final int MESSAGE_TYPE_INVOCATION = 1;
+    static final int MESSAGE_TYPE_PING = 6;
+    static final int MESSAGE_TYPE_CLOSE = 7;
+    static final String SEARCH_UPDATE_TARGET = "update";
+    static final long PING_INTERVAL_MILLIS = 15000;
+    static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    /**
+     * Receives events from the hub. Called on the WebSocket's thread, so shouldn't block.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onSearchUpdate(SlskdSearchStateResponse state);
+    }
+
+    /**
+     * Opens a WebSocket to the hub, passing it the given listener.
+     */
+    @FunctionalInterface
+    public interface Connector {
+        CompletableFuture<WebSocket> connect(WebSocket.Listener listener);
+    }
+
+    private final Connector connector;
+    private final ObjectMapper mapper;
+    private final List<Listener> listeners;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile WebSocket socket;
+    // Only true once the hub has accepted our handshake
+    private volatile boolean connected;
+    private volatile boolean closed;
+    // Stops the several ways a connection can fail from each scheduling a reconnect
+    private final AtomicBoolean reconnectPending;
+    // The latest send on the current socket. A WebSocket only allows one send at a time, so each waits for the last.
+    // Guarded by 'this'.
+    private CompletableFuture<WebSocket> lastSend;
+
+    public SlskdEventClient(Connector connector, ObjectMapper mapper) {
+        this.connector = connector;
+        this.mapper = mapper;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "slskd-events");
+            t.setDaemon(true);
+            return t;
+        });
+        this.connected = false;
+        this.closed = false;
+        this.reconnectPending = new AtomicBoolean(false);
+        this.lastSend = CompletableFuture.completedFuture(null);
+    }
+
+    public static SlskdEventClient create(Config config, SlskdClient client) {
+
+        final HttpClient http = HttpClient.newHttpClient();
+        final String hubUrl = config.slskdBaseUrl().replaceFirst("^http", "ws") + "/hub/search";
+        // Browsers can't set headers on WebSockets, so slskd takes the token as a query parameter instead.
+        // Fetched on every connection attempt, in case the previous one has expired.
+        return new SlskdEventClient(
+                listener -> http.newWebSocketBuilder().buildAsync(URI.create(
+                        STR."\{hubUrl}?access_token=\{URLEncoder.encode(client.accessToken(), StandardCharsets.UTF_8)}"), listener),
+                JacksonConfig.MAPPER);
+    }
+
+    public SlskdEventClient start() {
+
+        connect();
+        scheduler.scheduleAtFixedRate(this::ping, PING_INTERVAL_MILLIS, PING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void connect() {
+
+        reconnectPending.set(false);
+        if (closed) {
+            return;
+        }
+        final CompletableFuture<WebSocket> attempt;
+        try {
+            attempt = connector.connect(new HubListener());
+        } catch (RuntimeException e) {
+            onDisconnect(e);
+            return;
+        }
+        attempt.whenComplete((ws, t) -> {
+            if (t != null) {
+                onDisconnect(t);
+                return;
+            }
+            this.socket = ws;
+            synchronized (this) {
+                // Anything still waiting to go out on the last socket no longer matters
+                lastSend = CompletableFuture.completedFuture(ws);
+            }
+            send(ws, w -> w.sendText(HANDSHAKE, true));
+        });
+    }
+
+    /**
+     * Sends on {@code ws} once every earlier send has finished, successfully or not.
+     */
+    private synchronized void send(WebSocket ws, Function<WebSocket, CompletableFuture<WebSocket>> op) {
+
+        lastSend = lastSend
+                .exceptionally(t -> {
+                    log.debug("Error sending to slskd search hub", t);
+                    return ws;
+                })
+                .thenCompose(__ -> op.apply(ws));
+    }
+
+    private void onDisconnect(Throwable cause) {
+
+        final boolean wasConnected = connected;
+        connected = false;
+        socket = null;
+        if (closed || !reconnectPending.compareAndSet(false, true)) {
+            return;
+        }
+        if (wasConnected) {
+            log.warn("Lost connection to slskd search hub, falling back to polling until it's back", cause);
+        } else {
+            log.debug("Couldn't connect to slskd search hub", cause);
+        }
+        try {
+            scheduler.schedule(this::connect, RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed in the meantime
+        }
+    }
+
+    /**
+     * Keeps the connection alive, once the hub has answered our handshake. Run by the scheduler, may be used in tests.
+     */
+    void ping() {
+
+        final WebSocket ws = socket;
+        if (connected && ws != null) {
+            send(ws, w -> w.sendText(PING, true));
+        }
+    }
+
+    /**
+     * Handles one complete SignalR message, without its record separator.
+     */
+    void onMessage(String message) {
+
+        final JsonNode node;
+        try {
+            node = mapper.readTree(message);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed message from slskd search hub: {}", message, e);
+            return;
+        }
+
+        if (!connected) {
+            // The first message is the response to our handshake, which is empty unless something went wrong
+            if (node.hasNonNull("error")) {
+                log.error("slskd search hub rejected handshake: {}", node.get("error").asText());
+                final WebSocket ws = socket;
+                if (ws != null) {
+                    ws.abort();
+                }
+                onDisconnect(null);
+                return;
+            }
+            connected = true;
+            log.info("Connected to slskd search hub");
+            return;
+        }
+
+        switch (node.path("type").asInt()) {
+            case MESSAGE_TYPE_INVOCATION -> {
+                // SignalR method names are case-insensitive, and slskd sends this one as UPDATE
+                if (!SEARCH_UPDATE_TARGET.equalsIgnoreCase(node.path("target").asText())) {
+                    return;
+                }
+                final JsonNode args = node.path("arguments");
+                if (!args.isArray() || args.isEmpty()) {
+                    return;
+                }
+                final SlskdSearchStateResponse state;
+                try {
+                    state = mapper.treeToValue(args.get(0), SlskdSearchStateResponse.class);
+                } catch (JsonProcessingException e) {
+                    log.warn("Ignoring malformed search update from slskd search hub", e);
+                    return;
+                }
+                listeners.forEach(l -> l.onSearchUpdate(state));
+            }
+            case MESSAGE_TYPE_CLOSE -> {
+                log.warn("slskd search hub closed the connection: {}", node.path("error").asText("no reason given"));
+                final WebSocket ws = socket;
+                if (ws != null) {
+                    ws.abort();
+                }
+                onDisconnect(null);
+            }
+            default -> {
+                // Pings, and anything we don't care about
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+        connected = false;
+        scheduler.shutdownNow();
+        final WebSocket ws = socket;
+        if (ws != null) {
+            send(ws, w -> w.sendClose(WebSocket.NORMAL_CLOSURE, ""));
+        }
+    }
+
+    private class HubListener implements WebSocket.Listener {
+
+        // Messages can be split over several frames, and one frame can hold several messages
+        private final StringBuilder buffer = new StringBuilder();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+
+            buffer.append(data);
+            int end;
+            while ((end = buffer.indexOf(String.valueOf(RECORD_SEPARATOR))) != -1) {
+                final String message = buffer.substring(0, end);
+                buffer.delete(0, end + 1);
+                onMessage(message);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+
+            onDisconnect(new RuntimeException(STR."Closed with status \{statusCode}: \{reason}"));
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+
+            onDisconnect(error);
+        }
+    }
+}
@@ -35,4 +35,32 @@ public interface Config {
     Optional<String> plexToken();
 
     Optional<String> plexLibrarySectionId();
+
+    @EnvVar(defaultValue = "5")
+    int searchConcurrency();
+
+    @EnvVar(defaultValue = "1000")
+    long searchMinSpacingMillis();
+
+    @EnvVar(defaultValue = "0.5")
+    double searchesPerSecond();
+
+    @EnvVar(defaultValue = "1440")
+    long searchCacheTtlMinutes();
+
+    @EnvVar(defaultValue = "true")
+    boolean slskdRealtimeEvents();
+
+    // 0 for one thread per core, 1 to process users one after another
+    @EnvVar(defaultValue = "0")
+    int processorParallelism();
+
+    // 0 to rank every user, including those that couldn't be downloaded from. Unattended downloading only ever
+    // uses users that can be, so it keeps the best ActiveDownloadProcessor.MAX_RESULTS unless this is set.
+    @EnvVar(defaultValue = "0")
+    int processorMaxResults();
+
+    // Keeps every candidate of every directory in the results, for looking into how users were scored
+    @EnvVar(defaultValue = "false")
+    boolean processorVerboseResults();
 }
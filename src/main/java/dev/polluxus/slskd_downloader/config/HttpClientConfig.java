@@ -0,0 +1,75 @@
+package dev.polluxus.slskd_downloader.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * Builds HTTP clients with explicitly sized connection pools, rather than the library defaults of
+ * 5 connections per route, which the search pool, download poller and callbacks easily use up between them.
+ */
+public class HttpClientConfig {
+
+    public static final int MAX_CONNECTIONS = 64;
+    public static final int MAX_CONNECTIONS_PER_ROUTE = 32;
+    public static final Timeout CONNECT_TIMEOUT = Timeout.ofSeconds(10);
+    public static final Timeout RESPONSE_TIMEOUT = Timeout.ofSeconds(60);
+    // How long idle connections are kept around for reuse
+    public static final TimeValue KEEP_ALIVE = TimeValue.ofSeconds(30);
+
+    private HttpClientConfig() {
+    }
+
+    public static CloseableHttpClient pooledClient() {
+
+        return HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(MAX_CONNECTIONS)
+                        .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                        .setDefaultConnectionConfig(connectionConfig())
+                        .build())
+                .setDefaultRequestConfig(requestConfig())
+                .evictIdleConnections(KEEP_ALIVE)
+                .build();
+    }
+
+    /**
+     * @return a started async client, which doesn't hold a thread while waiting for a response
+     */
+    public static CloseableHttpAsyncClient pooledAsyncClient() {
+
+        final CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(MAX_CONNECTIONS)
+                        .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                        .setDefaultConnectionConfig(connectionConfig())
+                        .build())
+                .setDefaultRequestConfig(requestConfig())
+                .evictIdleConnections(KEEP_ALIVE)
+                .build();
+        client.start();
+        return client;
+    }
+
+    private static ConnectionConfig connectionConfig() {
+
+        return ConnectionConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT)
+                .build();
+    }
+
+    private static RequestConfig requestConfig() {
+
+        return RequestConfig.custom()
+                .setResponseTimeout(RESPONSE_TIMEOUT)
+                .setConnectionKeepAlive(KEEP_ALIVE)
+                .build();
+    }
+}
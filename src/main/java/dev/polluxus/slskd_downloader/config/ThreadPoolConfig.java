@@ -2,9 +2,26 @@ package dev.polluxus.slskd_downloader.config;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // TODO: Centralise thread pool instantiation here
 public class ThreadPoolConfig {
 
     public static ExecutorService VIRTUAL_THREAD_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * A pool for CPU bound work, kept apart from the common pool so that it can't be starved by (or starve)
+     * anything else. Its threads are daemons, so it needn't be shut down.
+     */
+    public static ForkJoinPool newComputePool(String name, int parallelism) {
+
+        final AtomicInteger threads = new AtomicInteger();
+        return new ForkJoinPool(parallelism, pool -> {
+            final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName(STR."\{name}-\{threads.incrementAndGet()}");
+            return t;
+        }, null, false);
+    }
 }
@@ -82,4 +82,44 @@ public abstract class UoeDefaultConfig implements Config {
     public Optional<String> plexLibrarySectionId() {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    public int searchConcurrency() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long searchMinSpacingMillis() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public double searchesPerSecond() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long searchCacheTtlMinutes() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean slskdRealtimeEvents() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int processorParallelism() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int processorMaxResults() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean processorVerboseResults() {
+        throw new UnsupportedOperationException();
+    }
 }
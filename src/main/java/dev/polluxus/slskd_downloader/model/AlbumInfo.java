@@ -1,7 +1,7 @@
 package dev.polluxus.slskd_downloader.model;
 
+import dev.polluxus.slskd_downloader.util.BoundedEditDistance;
 import dev.polluxus.slskd_downloader.util.Matchers;
-import org.apache.commons.text.similarity.LevenshteinDistance;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -28,13 +28,14 @@ public record AlbumInfo(
         return STR."\{String.join(" ", artists)} \{name}";
     }
 
-    // TODO: this could be memoized.
+    // Not cheap, AlbumMatchContext works this out once per search
     public boolean hasTrackContainingTitle() {
 
+        final String lowerName = name.toLowerCase();
         return tracks.stream().anyMatch(t -> {
-            final LevenshteinDistance d = Matchers.getEditDistanceFunc(t.title);
-            return t.title.toLowerCase().contains(name.toLowerCase()) ||
-                    d.apply(t.title.toLowerCase(), name.toLowerCase()) != -1;
+            final String lowerTitle = t.title.toLowerCase();
+            return lowerTitle.contains(lowerName) ||
+                    BoundedEditDistance.compile(lowerTitle, Matchers.editDistanceThreshold(t.title)).apply(lowerName) != -1;
         });
     }
 }
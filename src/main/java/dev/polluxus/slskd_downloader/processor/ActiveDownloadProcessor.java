@@ -1,109 +1,130 @@
 package dev.polluxus.slskd_downloader.processor;
 
 import dev.polluxus.slskd_downloader.client.slskd.request.SlskdDownloadRequest;
-import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadFileResponse;
 import dev.polluxus.slskd_downloader.config.ThreadPoolConfig;
 import dev.polluxus.slskd_downloader.model.AlbumInfo;
 import dev.polluxus.slskd_downloader.processor.DownloadProcessor.DownloadResult;
+import dev.polluxus.slskd_downloader.processor.model.output.DownloadPlan;
 import dev.polluxus.slskd_downloader.processor.model.output.ProcessorSearchResult;
 import dev.polluxus.slskd_downloader.processor.model.output.ProcessorUserResult;
 import dev.polluxus.slskd_downloader.service.SlskdService;
+import dev.polluxus.slskd_downloader.service.TransferChange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-public class ActiveDownloadProcessor implements Function<ProcessorSearchResult, CompletableFuture<DownloadResult>> {
+public class ActiveDownloadProcessor implements SearchResultConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(ActiveDownloadProcessor.class);
 
-    private List<ProcessorUserResult> userResults;
+    // Acceptable results that haven't been tried yet, guarded by 'this'. Only their plans are kept, a download
+    // can take hours and the rest of each result is no use by then.
+    private final Deque<DownloadPlan> pending;
+    private final Set<String> triedUsers;
+    private boolean searchComplete;
     private AlbumInfo albumInfo;
     private int position;
     private DownloadTracker tracker;
-    private boolean locked;
 
     private final SlskdService slskdService;
     private final CompletableFuture<DownloadResult> result;
-    /**
-     * This is a bit of a smell, but the processor uses the callback function as part of the
-     * identity of the subscription. And because two references to the same method are not equal, e.g.
-     * <pre>
-     *     String s = "a";
-     *     var m1 = s::equals;
-     *     var m2 = s::equals;
-     *     return m1.equals(m2);
-     * </pre>
-     * returns false, we therefore must maintain a reference to only a single instance of this function.
-     */
-    private final BiConsumer<List<SlskdDownloadFileResponse>, SlskdGetDownloadResponse> onUpdate;
+
+    // Only acceptable results are ever tried, and rarely more than a few of them, so there's no need for the
+    // processor to rank any more users than this
+    public static final int MAX_RESULTS = 20;
+    // How long a download may go without any matching transfers showing up
+    static final long EMPTY_TIMEOUT_MILLIS = 50_000;
+    // How long transfers may be in progress without transferring anything
+    static final long STALLED_TIMEOUT_MILLIS = 60_000;
+    // How long we'll sit in the user's queue while nothing at all is being downloaded from them
+    static final long QUEUED_TIMEOUT_MILLIS = 120_000;
+    // Minimum time between retries of failed transfers
+    static final long RETRY_INTERVAL_MILLIS = 10_000;
 
     private static class DownloadTracker {
-        private final ProcessorUserResult target;
+        private final DownloadPlan target;
+        // Set once the download has been initiated
+        private volatile SlskdService.Subscription subscription;
+        // The latest state of each of our transfers, built up from the changes we're sent
+        private final Map<UUID, SlskdDownloadFileResponse> transfers = new HashMap<>();
         private int failureCount = 0;
-        private int timesWhereEmpty = 0;
-        private int timesWhereStale = 0;
-        private int timesWhereIdle = 0;
-        private Map<String, SlskdDownloadFileResponse> lastKnownState = Map.of();
+        private long emptySinceMillis = -1;
+        private long idleSinceMillis = -1;
+        private long lastProgressMillis;
+        private long lastRetryMillis = -1;
 
-        public DownloadTracker(ProcessorUserResult target) {
+        public DownloadTracker(DownloadPlan target) {
             this.target = target;
+            this.lastProgressMillis = System.currentTimeMillis();
         }
     }
 
     public ActiveDownloadProcessor(SlskdService slskdService) {
         this.result = new CompletableFuture<>();
+        this.pending = new ArrayDeque<>();
+        this.triedUsers = new HashSet<>();
+        this.searchComplete = false;
         this.position = 0;
         this.slskdService = slskdService;
-        this.locked = false;
-        this.onUpdate = (files, allFilesForUser) -> {
-            if (locked) {
-                return;
-            }
-
-            locked = true;
-            try {
-                onUpdateBody(files, allFilesForUser);
-            } finally {
-                if (this.tracker != null) {
-                    this.tracker.lastKnownState = files.stream()
-                            .collect(Collectors.toMap(SlskdDownloadFileResponse::filename, Function.identity()));
-                }
-                locked = false;
-            }
-        };
     }
 
-    private void onUpdateBody(List<SlskdDownloadFileResponse> files, SlskdGetDownloadResponse allFilesForUser) {
-
-        DownloadTracker current = this.tracker;
+    /**
+     * Called by the service, one call at a time, with changes to the transfers of the download being
+     * tracked by {@code current}.
+     */
+    private void onUpdate(DownloadTracker current, List<TransferChange> changes, boolean anyInProgress) {
 
-        if (current == null) {
-            log.warn("Outcome for download result {} of search {}: tracker gone!", this.position, this.albumInfo.searchString());
-            this.process();
+        if (current != this.tracker) {
+            // These changes are for a download we've since given up on
+            if (this.tracker == null) {
+                log.warn("Outcome for download result {} of search {}: tracker gone!", this.position, this.albumInfo.searchString());
+                this.process();
+            }
             return;
         }
+        final long now = System.currentTimeMillis();
+        for (var change : changes) {
+            if (change.isRemoved()) {
+                current.transfers.remove(change.id());
+                continue;
+            }
+            current.transfers.put(change.id(), change.current());
+            if (change.bytesProgressed() > 0 || change.stateChanged()) {
+                current.lastProgressMillis = now;
+            }
+        }
+        if (current.subscription == null) {
+            // The update raced the subscription being handed back to us, the next one will do
+            return;
+        }
+        onUpdateBody(current, new ArrayList<>(current.transfers.values()), anyInProgress, now);
+    }
+
+    private void onUpdateBody(DownloadTracker current, List<SlskdDownloadFileResponse> files, boolean anyInProgress, long now) {
+
         final String hostUser = current.target.username();
 
         // If there aren't any matching files, seems likely that our download
         // never successfully started, but give it a bit anyways
         if (files.isEmpty()) {
-            current.timesWhereEmpty++;
-            // Once this has fired a few times, abandon this request
-            if (current.timesWhereEmpty >= 5) {
+            if (current.emptySinceMillis == -1) {
+                current.emptySinceMillis = now;
+            }
+            // Once it's been like this for a while, abandon this request
+            if (now - current.emptySinceMillis >= EMPTY_TIMEOUT_MILLIS) {
                 log.warn("Outcome for download result {} of search {}: was empty for too long", this.position, this.albumInfo.searchString());
                 this.unsubscribe();
                 this.process();
             }
             return;
         }
-        current.timesWhereEmpty = 0;
+        current.emptySinceMillis = -1;
 
         // If every file completed OK, then we are done, yippee!!
         if (files.stream().allMatch(dfr -> "Completed, Succeeded".equals(dfr.state()))) {
@@ -120,23 +141,15 @@ public class ActiveDownloadProcessor implements Function<ProcessorSearchResult,
 
         // If any files are in progress, check whether they are actually progressing...
         if (!inProgress.isEmpty()) {
-            final boolean hasProgressed = inProgress.entrySet().stream().anyMatch(e -> {
-                final SlskdDownloadFileResponse previous = current.lastKnownState.get(e.getKey());
-                return previous != null && previous.bytesTransferred() < e.getValue().bytesTransferred();
-            });
-            if (!hasProgressed) {
-                // If it's been more than 6 polls (60 seconds) since we saw any file progress,
-                // cancel the download and try the next result
-                if (++current.timesWhereStale >= 6) {
-                    this.unsubscribe();
-                    this.cancelAll(hostUser, files.stream().map(SlskdDownloadFileResponse::id).toList());
-                    this.process();
-                    return;
-                }
-            } else {
-                current.timesWhereStale = 0;
+            // If it's been a minute since we saw any file progress, cancel the download and try the next result
+            if (now - current.lastProgressMillis >= STALLED_TIMEOUT_MILLIS) {
+                log.warn("Outcome for download result {} of search {}: stalled", this.position, this.albumInfo.searchString());
+                this.unsubscribe();
+                this.cancelAll(hostUser, files.stream().map(SlskdDownloadFileResponse::id).toList());
+                this.process();
+                return;
             }
-            log.info("Outcome for download result {} of search {}: still in progress and looking good", this.position, this.albumInfo.searchString());
+            log.debug("Outcome for download result {} of search {}: still in progress and looking good", this.position, this.albumInfo.searchString());
             return;
         }
 
@@ -163,7 +176,6 @@ public class ActiveDownloadProcessor implements Function<ProcessorSearchResult,
 
         // Find all the failed files
         var failures = files.stream().filter(dfr -> "Completed, Errored".equals(dfr.state()) || "Completed, TimedOut".equals(dfr.state())).toList();
-        final boolean anyInProgress = allFilesForUser.directories().stream().flatMap(r -> r.files().stream()).anyMatch(dfr -> dfr.state().equals("InProgress"));
 
         if (failures.isEmpty()) {
             // We haven't got any error-failures, and we also haven't got any active downloads for this request.
@@ -171,7 +183,10 @@ public class ActiveDownloadProcessor implements Function<ProcessorSearchResult,
             if (!anyInProgress) {
                 // TODO: it would ideally be configurable whether you actually do anything about this. Some users might be fine
                 //   with waiting.
-                if (++current.timesWhereIdle >= 12) {
+                if (current.idleSinceMillis == -1) {
+                    current.idleSinceMillis = now;
+                }
+                if (now - current.idleSinceMillis >= QUEUED_TIMEOUT_MILLIS) {
                     log.warn("Outcome for download result {} of search {}: aborting due to excessive queueing times",
                             this.position, this.albumInfo.searchString());
                     this.unsubscribe();
@@ -180,14 +195,18 @@ public class ActiveDownloadProcessor implements Function<ProcessorSearchResult,
                     return;
                 }
             }
-            log.info("Outcome for download result {} of search {}: enqueued (other DLs from user in progress? {})...",
+            log.debug("Outcome for download result {} of search {}: enqueued (other DLs from user in progress? {})...",
                     this.position, this.albumInfo.searchString(), anyInProgress ? "yes" : "no");
             return;
         }
 
         // There are some failures, but we have downloads with the user elsewhere in progress
         if (anyInProgress) {
-            log.info("Outcome for download result {} of search {}: other downloads taking priority for now", this.position, this.albumInfo.searchString());
+            log.debug("Outcome for download result {} of search {}: other downloads taking priority for now", this.position, this.albumInfo.searchString());
+            return;
+        }
+        // Give the last retry a chance to take effect before counting these failures again
+        if (current.lastRetryMillis != -1 && now - current.lastRetryMillis < RETRY_INTERVAL_MILLIS) {
             return;
         }
         // If we're over the failure threshold, unsubscribe, cancel these downloads, and proceed with the next result
@@ -200,15 +219,16 @@ public class ActiveDownloadProcessor implements Function<ProcessorSearchResult,
             return;
         }
         // Otherwise, retry them all
+        current.lastRetryMillis = now;
         retryAll(hostUser, failures);
         log.info("Outcome for download result {} of search {}: retrying {} files", this.position, this.albumInfo.searchString(), failures.size());
     }
 
     private void unsubscribe() {
-        slskdService.unsubscribe(this.tracker.target.username(), this.tracker.target.bestCandidates().stream()
-                .map(fr -> new SlskdDownloadRequest(fr.originalData().filename(), fr.originalData().size()))
-                .toList(), onUpdate);
-        this.tracker = null;
+        slskdService.unsubscribe(this.tracker.subscription);
+        synchronized (this) {
+            this.tracker = null;
+        }
     }
 
     private void retryAll(final String hostUser, final List<SlskdDownloadFileResponse> files) {
@@ -232,36 +252,75 @@ public class ActiveDownloadProcessor implements Function<ProcessorSearchResult,
 
         CompletableFuture.runAsync(() -> {
 
-            // If it's empty right off the bat, then there's just nothing to do.
-            if (userResults.isEmpty()) {
-
-                result.complete(DownloadResult.DIDNT_TRY);
+            final DownloadPlan currResult;
+            final DownloadTracker currTracker;
+            synchronized (this) {
+                // Either a download is already underway, or we're done altogether
+                if (this.tracker != null || result.isDone()) {
+                    return;
+                }
+                currResult = pending.poll();
+                if (currResult == null) {
+                    // More results may still turn up until the search has finished. After that, if we
+                    // never started a download there was just nothing to do, otherwise we have run out of results.
+                    if (searchComplete) {
+                        result.complete(position == 0 ? DownloadResult.DIDNT_TRY : DownloadResult.TRIED_FAILED);
+                    }
+                    return;
+                }
+                position++;
+                triedUsers.add(currResult.username());
+                currTracker = new DownloadTracker(currResult);
+                this.tracker = currTracker;
             }
+            log.info("Enqueueing download with {} ({} files) for search {}", currResult.username(), currResult.files().size(), albumInfo.searchString());
+            slskdService.initiateAndSubscribe(currResult.username(), currResult.files().stream()
+                    .map(f -> new SlskdDownloadRequest(f.filename(), f.size()))
+                    .toList(), (changes, anyInProgress) -> onUpdate(currTracker, changes, anyInProgress))
+                    .thenAccept(sub -> currTracker.subscription = sub);
+        }, ThreadPoolConfig.VIRTUAL_THREAD_EXECUTOR);
+    }
+
+    /**
+     * Whether a user's result is good enough to attempt a download from.
+     */
+    public static boolean isAcceptable(ProcessorUserResult userResult, AlbumInfo albumInfo) {
+
+        return SlskdResponseProcessor.isDownloadable(userResult.scoreOfBestCandidates(), userResult.bestCandidates().size(), albumInfo);
+    }
 
-            if (position < userResults.size()) {
-                final var currResult = userResults.get(position++);
-                this.tracker = new DownloadTracker(currResult);
-                log.info("Enqueueing download with {} ({} files) for search {}", currResult.username(), currResult.bestCandidates().size(), albumInfo.searchString());
-                slskdService.initiateAndSubscribe(currResult.username(), currResult.bestCandidates().stream()
-                        .map(fr -> new SlskdDownloadRequest(fr.originalData().filename(), fr.originalData().size()))
-                        .toList(), this.onUpdate);
+    @Override
+    public void offer(AlbumInfo albumInfo, ProcessorUserResult userResult) {
+
+        if (!isAcceptable(userResult, albumInfo)) {
+            return;
+        }
+        synchronized (this) {
+            this.albumInfo = albumInfo;
+            if (result.isDone() || triedUsers.contains(userResult.username())) {
                 return;
             }
-            // If a tracker wasn't set, we escaped the loop above without starting a download,
-            // and we have run out of results
-            if (this.tracker == null) {
-                result.complete(DownloadResult.TRIED_FAILED);
-            }
-        }, ThreadPoolConfig.VIRTUAL_THREAD_EXECUTOR);
+            pending.add(DownloadPlan.of(userResult));
+        }
+        log.debug("Search {} found an acceptable result from {} while still running", albumInfo.searchString(), userResult.username());
+        this.process();
     }
 
     @Override
     public CompletableFuture<DownloadResult> apply(ProcessorSearchResult processorSearchResult) {
 
-        this.userResults = processorSearchResult.userResults().stream()
-                .filter(f -> f.scoreOfBestCandidates() >= 0.8 && f.bestCandidates().size() == processorSearchResult.albumInfo().tracks().size())
-                .toList();
-        this.albumInfo = processorSearchResult.albumInfo();
+        synchronized (this) {
+            this.albumInfo = processorSearchResult.albumInfo();
+            // The complete, ranked results replace whatever was offered while the search was running,
+            // apart from the users we've already tried.
+            pending.clear();
+            processorSearchResult.userResults().stream()
+                    .filter(f -> isAcceptable(f, albumInfo))
+                    .filter(f -> !triedUsers.contains(f.username()))
+                    .map(DownloadPlan::of)
+                    .forEach(pending::add);
+            searchComplete = true;
+        }
         this.process();
         return result;
     }
@@ -15,9 +15,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Function;
 
-public class DownloadProcessor implements Function<ProcessorSearchResult, CompletableFuture<DownloadResult>> {
+public class DownloadProcessor implements SearchResultConsumer {
 
     public interface DecisionMaker {
         UserConfirmationResult confirm(final AlbumInfo albumInfo, final ProcessorUserResult res);
@@ -89,9 +88,12 @@ public class DownloadProcessor implements Function<ProcessorSearchResult, Comple
                         break resultsLoop;
                     }
                     case YES -> {
+                        // Results are confirmed one at a time on this processor's own thread, so it waits here
+                        // to find out whether to carry on to the next one
                         boolean ok = service.initiateDownloads(e.username(), e.bestCandidates().stream()
                                 .map(f -> new SlskdDownloadRequest(f.originalData().filename(), f.originalData().size()))
-                                .toList());
+                                .toList())
+                                .join();
 
                         if (ok) {
                             downloadResult.set(DownloadResult.OK);
@@ -0,0 +1,22 @@
+package dev.polluxus.slskd_downloader.processor;
+
+import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.processor.DownloadProcessor.DownloadResult;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorSearchResult;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorUserResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Acts on the processed results of a search, e.g. by downloading the album from the best user.
+ */
+public interface SearchResultConsumer extends Function<ProcessorSearchResult, CompletableFuture<DownloadResult>> {
+
+    /**
+     * Offers the result for a single user while the search is still running. Consumers that can only
+     * act on the complete, ranked result can ignore this.
+     */
+    default void offer(AlbumInfo albumInfo, ProcessorUserResult userResult) {
+    }
+}
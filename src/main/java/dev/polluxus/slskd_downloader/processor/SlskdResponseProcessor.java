@@ -5,11 +5,17 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
 import dev.polluxus.slskd_downloader.config.Config;
 import dev.polluxus.slskd_downloader.config.JacksonConfig;
+import dev.polluxus.slskd_downloader.config.ThreadPoolConfig;
 import dev.polluxus.slskd_downloader.model.AlbumInfo;
 import dev.polluxus.slskd_downloader.model.AlbumInfo.AlbumTrack;
+import dev.polluxus.slskd_downloader.processor.matcher.AlbumMatchContext;
+import dev.polluxus.slskd_downloader.processor.matcher.DirectoryRejections;
+import dev.polluxus.slskd_downloader.processor.matcher.DirectoryRejections.Reason;
 import dev.polluxus.slskd_downloader.processor.matcher.MatchStrategyType;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputDirectory;
 import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
 import dev.polluxus.slskd_downloader.processor.model.output.*;
+import dev.polluxus.slskd_downloader.util.AudioFiles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,7 +24,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static dev.polluxus.slskd_downloader.processor.matcher.MatchStrategy.FILE_FORMAT_PATTERN;
 
@@ -26,21 +36,47 @@ public class SlskdResponseProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(SlskdResponseProcessor.class);
 
+    // Package-private constants, may be used in tests
+    // Users with more directories than this have them matched in several pieces
+    static final int DIRECTORIES_PER_TASK = 32;
+    static final double MIN_DOWNLOADABLE_SCORE = 0.8;
+
     private final MatchStrategyType matchStrategy;
     private final Set<String> blacklistedUsers;
+    // Null to process everything on the calling thread
+    private final ForkJoinPool pool;
+    // How many users to rank, 0 for all of them. When limited, only users that could be downloaded from are kept.
+    private final int maxResults;
+    // Whether results keep the directories and every candidate in them, rather than just the best candidates
+    private final boolean verboseResults;
 
     public SlskdResponseProcessor(MatchStrategyType matchStrategy) {
-        this.matchStrategy = matchStrategy;
-        this.blacklistedUsers = Set.of();
+        this(matchStrategy, Set.of());
     }
 
     public SlskdResponseProcessor(MatchStrategyType matchStrategy, Set<String> blacklistedUsers) {
+        this(matchStrategy, blacklistedUsers, null, 0, true);
+    }
+
+    public SlskdResponseProcessor(MatchStrategyType matchStrategy, Set<String> blacklistedUsers, ForkJoinPool pool,
+                                  int maxResults, boolean verboseResults) {
         this.matchStrategy = matchStrategy;
         this.blacklistedUsers = blacklistedUsers;
+        this.pool = pool;
+        this.maxResults = maxResults;
+        this.verboseResults = verboseResults;
     }
 
     public static SlskdResponseProcessor from(Config config, MatchStrategyType matchStrategy) {
 
+        return from(config, matchStrategy, config.processorMaxResults());
+    }
+
+    /**
+     * Like {@link #from(Config, MatchStrategyType)}, but ranking at most {@code maxResults} users, 0 for all of them.
+     */
+    public static SlskdResponseProcessor from(Config config, MatchStrategyType matchStrategy, int maxResults) {
+
         final Set<String> blacklistedUsers;
         if (config.blacklistedUsersFile().isPresent()) {
             try {
@@ -52,39 +88,138 @@ public class SlskdResponseProcessor {
         } else {
             blacklistedUsers = Set.of();
         }
-        return new SlskdResponseProcessor(matchStrategy, blacklistedUsers);
+        final int parallelism = config.processorParallelism() > 0
+                ? config.processorParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        final ForkJoinPool pool = parallelism > 1 ? ThreadPoolConfig.newComputePool("processor", parallelism) : null;
+        return new SlskdResponseProcessor(matchStrategy, blacklistedUsers, pool, maxResults,
+                config.processorVerboseResults());
     }
 
     public ProcessorSearchResult process(List<SlskdSearchDetailResponse> resps, AlbumInfo albumInfo) {
 
-        return new ProcessorSearchResult(albumInfo, resps.stream()
-                .map(ProcessorInputUser::convert)
+        final AlbumMatchContext context = AlbumMatchContext.of(albumInfo);
+        final List<ProcessorInputUser> inputs = resps.stream().map(ProcessorInputUser::convert).toList();
+        return new ProcessorSearchResult(albumInfo, rank(processUsers(inputs, context).stream()
+                .flatMap(Optional::stream)));
+    }
+
+    /**
+     * Processes each of {@code inputs} as {@link #processUser(ProcessorInputUser, AlbumMatchContext)} would,
+     * spread across the processor's pool if it has one.
+     * @return each user's result, in the same order as {@code inputs}
+     */
+    public List<Optional<ProcessorUserResult>> processUsers(List<ProcessorInputUser> inputs, AlbumMatchContext context) {
+
+        if (pool == null || inputs.isEmpty()) {
+            return inputs.stream().map(i -> processUser(i, context)).toList();
+        }
+        // Null where a user has no result
+        final ProcessorUserResult[] results = new ProcessorUserResult[inputs.size()];
+        pool.invoke(new UserTask(inputs, context, results, 0, inputs.size()));
+        return Arrays.stream(results).map(Optional::ofNullable).toList();
+    }
+
+    /**
+     * Matches and scores the files of a single responding user.
+     * @return the user's result, or empty if the user is blacklisted or has nothing matching the album. When the
+     * number of results is limited, also empty if the album couldn't be downloaded from the user.
+     */
+    public Optional<ProcessorUserResult> processUser(SlskdSearchDetailResponse resp, AlbumInfo albumInfo) {
+
+        return processUser(ProcessorInputUser.convert(resp), albumInfo);
+    }
+
+    /**
+     * Like {@link #processUser(SlskdSearchDetailResponse, AlbumInfo)}, for a response whose files have already
+     * been grouped by directory.
+     */
+    public Optional<ProcessorUserResult> processUser(ProcessorInputUser input, AlbumInfo albumInfo) {
+
+        return processUser(input, AlbumMatchContext.of(albumInfo));
+    }
+
+    /**
+     * Like {@link #processUser(ProcessorInputUser, AlbumInfo)}, reusing the album's context across all the users
+     * in a search.
+     */
+    public Optional<ProcessorUserResult> processUser(ProcessorInputUser input, AlbumMatchContext context) {
+
+        final AlbumInfo albumInfo = context.albumInfo();
+        return Optional.of(input)
                 .filter(r -> !blacklistedUsers.contains(r.originalData().username()))
-                .map(r -> findMatches(r, albumInfo))
+                .map(r -> findMatches(r, context))
                 .filter(r -> !r.directories().isEmpty())
+                // Not worth picking the best candidates of a user who is missing tracks altogether
+                .filter(r -> maxResults <= 0 || matchesEveryTrack(r, albumInfo))
                 .map(r -> computeBestDirectories(r, albumInfo))
                 .map(r -> scoreUser(r, albumInfo))
                 .filter(ur -> !ur.directories().isEmpty())
-                .map(ProcessorUserResultBuilder::build)
-                .sorted(USER_RESULT_COMPARATOR.reversed())
-                .toList());
-    }
-
-    private ProcessorUserResultBuilder findMatches(ProcessorInputUser resp, AlbumInfo albumInfo) {
-
-        final List<ProcessorDirectoryResultBuilder> directoryResults = resp.directories().stream()
-                .map(d -> {
-                    final Map<String, List<ProcessorFileResultBuilder>> matches = matchStrategy.match(d, albumInfo);
-                    matches.values().stream().flatMap(Collection::stream)
-                            .forEach(a -> a
-                                    .isTargetFormat(FILE_FORMAT_PATTERN.matcher(a.originalData().filename()).find())
-                                    // Almost all audio files will be at least 500kb and this helps
-                                    // filter out e.g. tiny metadata files that contain the song name
-                                    .sizeOk(a.originalData().size() > 500_000)
-                            );
-                    return ProcessorDirectoryResultBuilder.builder()
-                            .byTrackName(matches);
-                })
+                .filter(ur -> maxResults <= 0
+                        || isDownloadable(ur.scoreOfBestCandidates(), ur.bestCandidates().size(), albumInfo))
+                // Everything that was matched is only needed to see how the best candidates were picked
+                .map(ur -> verboseResults ? ur : ur.directories(List.of()))
+                .map(ProcessorUserResultBuilder::build);
+    }
+
+    /**
+     * Whether a user's result is good enough to attempt a download from: every track, at a decent score.
+     */
+    public static boolean isDownloadable(double scoreOfBestCandidates, int bestCandidates, AlbumInfo albumInfo) {
+
+        return scoreOfBestCandidates >= MIN_DOWNLOADABLE_SCORE && bestCandidates == albumInfo.tracks().size();
+    }
+
+    // Each track can have at most one best candidate, so a user can't end up with all of them without this
+    private static boolean matchesEveryTrack(ProcessorUserResultBuilder builder, AlbumInfo albumInfo) {
+
+        final Set<String> matched = new HashSet<>();
+        for (var d : builder.directories()) {
+            matched.addAll(d.byTrackName().keySet());
+        }
+        return matched.size() >= albumInfo.tracks().size();
+    }
+
+    /**
+     * Orders user results from best to worst, keeping only the best few when the number of results is limited.
+     * Users that rank the same stay in the order they were given in.
+     */
+    public List<ProcessorUserResult> rank(Stream<ProcessorUserResult> userResults) {
+
+        final List<RankedUser> ranked;
+        if (maxResults <= 0) {
+            ranked = new ArrayList<>();
+            userResults.forEachOrdered(r -> ranked.add(new RankedUser(sortKey(r), ranked.size(), r)));
+        } else {
+            // The worst of the best so far is always at the head, ready to be pushed out
+            final PriorityQueue<RankedUser> best = new PriorityQueue<>(maxResults + 1, BEST_FIRST.reversed());
+            final Iterator<ProcessorUserResult> it = userResults.iterator();
+            for (int arrival = 0; it.hasNext(); arrival++) {
+                final ProcessorUserResult r = it.next();
+                best.add(new RankedUser(sortKey(r), arrival, r));
+                if (best.size() > maxResults) {
+                    best.poll();
+                }
+            }
+            ranked = new ArrayList<>(best);
+        }
+        ranked.sort(BEST_FIRST);
+        return ranked.stream().map(RankedUser::result).toList();
+    }
+
+    private ProcessorUserResultBuilder findMatches(ProcessorInputUser resp, AlbumMatchContext context) {
+
+        final List<ProcessorInputDirectory> directories = prefilter(resp.directories(), context);
+        final ProcessorDirectoryResultBuilder[] matched = new ProcessorDirectoryResultBuilder[directories.size()];
+        // Only split up users that would otherwise hold up the rest of the search
+        if (pool != null && ForkJoinTask.getPool() == pool && directories.size() > DIRECTORIES_PER_TASK) {
+            new DirectoryTask(directories, context, matched, 0, directories.size()).invoke();
+        } else {
+            for (int i = 0; i < directories.size(); i++) {
+                matched[i] = matchDirectory(directories.get(i), context);
+            }
+        }
+        final List<ProcessorDirectoryResultBuilder> directoryResults = Arrays.stream(matched)
                 .filter(d -> !d.byTrackName().isEmpty())
                 .toList();
 
@@ -94,6 +229,128 @@ public class SlskdResponseProcessor {
                 .directories(directoryResults);
     }
 
+    /**
+     * Throws out the directories that couldn't contribute anything to a download, going by their files' names,
+     * sizes and locks alone, before any of them are matched.
+     */
+    private List<ProcessorInputDirectory> prefilter(List<ProcessorInputDirectory> directories, AlbumMatchContext context) {
+
+        final DirectoryRejections rejections = context.directoryRejections();
+        final List<ProcessorInputDirectory> kept = new ArrayList<>(directories.size());
+        int usableFiles = 0;
+        for (var d : directories) {
+            int audio = 0;
+            int unlocked = 0;
+            int usable = 0;
+            for (int i = 0; i < d.fileCount(); i++) {
+                if (AudioFiles.isAudio(d.name(i))) {
+                    audio++;
+                    if (!d.locked(i)) {
+                        unlocked++;
+                        if (d.size(i) > 0) {
+                            usable++;
+                        }
+                    }
+                }
+            }
+            if (audio == 0) {
+                rejections.add(Reason.NO_AUDIO, 1);
+            } else if (unlocked == 0) {
+                rejections.add(Reason.LOCKED, 1);
+            } else if (usable == 0) {
+                // Only empty files are thrown out. Small ones just lose their size points when scored, and a
+                // directory's total size says little when an album is split across several of them.
+                rejections.add(Reason.EMPTY, 1);
+            } else {
+                kept.add(d);
+                usableFiles += usable;
+            }
+        }
+        // Directories can't be judged by their file count alone, as albums are often split across several of
+        // them. The user as a whole needs a file per track though, to be kept when results are limited.
+        if (maxResults > 0 && !kept.isEmpty() && usableFiles < context.albumInfo().tracks().size()) {
+            rejections.add(Reason.TOO_FEW_FILES, kept.size());
+            return List.of();
+        }
+        return kept;
+    }
+
+    private ProcessorDirectoryResultBuilder matchDirectory(ProcessorInputDirectory d, AlbumMatchContext context) {
+
+        final Map<String, List<ProcessorFileResultBuilder>> matches = matchStrategy.match(d, context);
+        matches.values().stream().flatMap(Collection::stream)
+                .forEach(a -> a
+                        .isTargetFormat(FILE_FORMAT_PATTERN.matcher(a.originalData().filename()).find())
+                        // Almost all audio files will be at least 500kb and this helps
+                        // filter out e.g. tiny metadata files that contain the song name
+                        .sizeOk(a.originalData().size() > 500_000)
+                );
+        return ProcessorDirectoryResultBuilder.builder()
+                .byTrackName(matches);
+    }
+
+    // Results are written to their own index of a shared array, so the order never depends on which finishes first
+    private final class UserTask extends RecursiveAction {
+
+        private final List<ProcessorInputUser> inputs;
+        private final AlbumMatchContext context;
+        private final ProcessorUserResult[] results;
+        private final int from;
+        private final int to;
+
+        private UserTask(List<ProcessorInputUser> inputs, AlbumMatchContext context,
+                         ProcessorUserResult[] results, int from, int to) {
+            this.inputs = inputs;
+            this.context = context;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from == 1) {
+                results[from] = processUser(inputs.get(from), context).orElse(null);
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new UserTask(inputs, context, results, from, mid), new UserTask(inputs, context, results, mid, to));
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+
+        private final List<ProcessorInputDirectory> directories;
+        private final AlbumMatchContext context;
+        private final ProcessorDirectoryResultBuilder[] matched;
+        private final int from;
+        private final int to;
+
+        private DirectoryTask(List<ProcessorInputDirectory> directories, AlbumMatchContext context,
+                              ProcessorDirectoryResultBuilder[] matched, int from, int to) {
+            this.directories = directories;
+            this.context = context;
+            this.matched = matched;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from <= DIRECTORIES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    matched[i] = matchDirectory(directories.get(i), context);
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new DirectoryTask(directories, context, matched, from, mid),
+                    new DirectoryTask(directories, context, matched, mid, to));
+        }
+    }
+
     private static final int MATCHED_TRACKS_POINTS = 60;
     private static final int AVERAGE_SCORE_POINTS = 30;
     private static final int AVAILABLE_USER_POINTS = MATCHED_TRACKS_POINTS + AVERAGE_SCORE_POINTS;
@@ -181,17 +438,18 @@ public class SlskdResponseProcessor {
         return builder;
     }
 
-    private static final Comparator<ProcessorUserResult> USER_RESULT_COMPARATOR = (u1, u2) -> {
+    private record RankedUser(long key, int arrival, ProcessorUserResult result) {}
 
-        // Round results to nearest 0.05 (0.94 -> 0.95, 0.96 -> 1.00...)
-        final double u1Score = Math.round(u1.scoreOfBestCandidates() * 20.00) / 20.00;
-        final double u2Score = Math.round(u2.scoreOfBestCandidates() * 20.00) / 20.00;
-        if (u1Score > u2Score) {
-            return 1;
-        } else if (u1Score < u2Score) {
-            return -1;
-        }
-        // If the rounded values are equal, compare upload speeds
-        return Integer.compare(u1.uploadSpeed(), u2.uploadSpeed());
-    };
+    private static final Comparator<RankedUser> BEST_FIRST = Comparator.comparingLong(RankedUser::key).reversed()
+            .thenComparingInt(RankedUser::arrival);
+
+    /**
+     * Packs what users are ranked by into one number, worked out once per user rather than on every comparison:
+     * the score rounded to the nearest 0.05 (0.94 -> 0.95, 0.96 -> 1.00...) above the upload speed.
+     */
+    static long sortKey(ProcessorUserResult r) {
+
+        final long roundedScore = Math.round(r.scoreOfBestCandidates() * 20.00);
+        return (roundedScore << 32) | (r.uploadSpeed() - (long) Integer.MIN_VALUE);
+    }
 }
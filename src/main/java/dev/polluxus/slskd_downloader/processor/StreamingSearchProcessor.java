@@ -0,0 +1,115 @@
+package dev.polluxus.slskd_downloader.processor;
+
+import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.processor.matcher.AlbumMatchContext;
+import dev.polluxus.slskd_downloader.processor.matcher.DirectoryMatchCache;
+import dev.polluxus.slskd_downloader.processor.matcher.DirectoryRejections;
+import dev.polluxus.slskd_downloader.processor.matcher.TrackTitleIndex;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorSearchResult;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorUserResult;
+import dev.polluxus.slskd_downloader.service.SlskdService.SearchListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Matches and scores each user's response as it arrives during a search, handing every result to the
+ * consumer straight away so that a download can begin before the search has finished. Once enough users
+ * have a perfect copy of the album, the search is reported as done.
+ */
+public class StreamingSearchProcessor implements SearchListener {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingSearchProcessor.class);
+
+    // A few perfect results leave the download processor something to fall back on
+    static final int REQUIRED_PERFECT_MATCHES = 3;
+    // Anything at or above this rounds to 1.0 when results are ranked
+    static final double PERFECT_SCORE = 0.975;
+    // Placeholder for users that had nothing matching the album
+    private static final ProcessorUserResult NO_MATCH = new ProcessorUserResult(null, List.of(), 0, 0, List.of());
+
+    private final SlskdResponseProcessor processor;
+    private final AlbumInfo albumInfo;
+    // Shared by every user in the search
+    private final AlbumMatchContext context;
+    private final SearchResultConsumer consumer;
+
+    // Keyed by username, in order of arrival so that ties are ranked the same way as a one-off process.
+    // Users who matched nothing are kept too, so they're not processed again.
+    private final Map<String, ProcessorUserResult> processed;
+    private int perfectMatches = 0;
+
+    public StreamingSearchProcessor(SlskdResponseProcessor processor, AlbumInfo albumInfo, SearchResultConsumer consumer) {
+        this.processor = processor;
+        this.albumInfo = albumInfo;
+        this.context = AlbumMatchContext.of(albumInfo);
+        this.consumer = consumer;
+        this.processed = new LinkedHashMap<>();
+    }
+
+    @Override
+    public boolean onResponses(List<ProcessorInputUser> newResponses) {
+
+        for (var result : accept(newResponses)) {
+            if (result == null) {
+                continue;
+            }
+            if (isPerfect(result)) {
+                perfectMatches++;
+            }
+            consumer.offer(albumInfo, result);
+        }
+        return perfectMatches >= REQUIRED_PERFECT_MATCHES;
+    }
+
+    /**
+     * Processes whatever arrived after the last streamed batch and ranks all the results for the search.
+     */
+    public ProcessorSearchResult finish(List<ProcessorInputUser> allResponses) {
+
+        final Map<String, ProcessorInputUser> lateResponses = new LinkedHashMap<>();
+        for (var resp : allResponses) {
+            if (!processed.containsKey(resp.originalData().username())) {
+                lateResponses.putIfAbsent(resp.originalData().username(), resp);
+            }
+        }
+        final int late = lateResponses.size();
+        accept(List.copyOf(lateResponses.values()));
+        final TrackTitleIndex.Stats pruning = context.titleIndex().stats();
+        final DirectoryMatchCache.Stats reuse = context.directoryMatches().stats();
+        final DirectoryRejections rejections = context.directoryRejections();
+        log.debug("Search for {} streamed {} users, {} more arrived after the last batch. " +
+                        "Threw out {} directories before matching {}. " +
+                        "Reused the matches of {} of {} directories ({}%) from other users. " +
+                        "Ruled out {} of {} file and track pairs ({}%) before edit distance",
+                albumInfo.searchString(), processed.size() - late, late,
+                rejections.total(), rejections.counts(),
+                reuse.reused(), reuse.directories(), Math.round(reuse.reusedRatio() * 100),
+                pruning.pruned(), pruning.pairs(), Math.round(pruning.prunedRatio() * 100));
+
+        return new ProcessorSearchResult(albumInfo, processor.rank(processed.values().stream()
+                .filter(r -> r != NO_MATCH)));
+    }
+
+    /**
+     * @return the result of each response in turn, null where the user had nothing matching
+     */
+    private List<ProcessorUserResult> accept(List<ProcessorInputUser> resps) {
+
+        final List<Optional<ProcessorUserResult>> results = processor.processUsers(resps, context);
+        final List<ProcessorUserResult> ret = new ArrayList<>(resps.size());
+        for (int i = 0; i < resps.size(); i++) {
+            final ProcessorUserResult result = results.get(i).orElse(NO_MATCH);
+            processed.put(resps.get(i).originalData().username(), result);
+            ret.add(result == NO_MATCH ? null : result);
+        }
+        return ret;
+    }
+
+    private boolean isPerfect(ProcessorUserResult r) {
+
+        return r.scoreOfBestCandidates() >= PERFECT_SCORE && r.bestCandidates().size() == albumInfo.tracks().size();
+    }
+}
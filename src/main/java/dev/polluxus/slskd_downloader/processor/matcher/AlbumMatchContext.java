@@ -0,0 +1,94 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.model.AlbumInfo.AlbumTrack;
+import dev.polluxus.slskd_downloader.util.AhoCorasick;
+import dev.polluxus.slskd_downloader.util.BoundedEditDistance;
+
+import java.util.List;
+
+import static dev.polluxus.slskd_downloader.util.Matchers.editDistanceThreshold;
+
+/**
+ * Everything the match strategies need that depends only on the album, worked out once per search rather than
+ * for every file. Lives as long as whoever is processing the search holds on to it, so nothing piles up between
+ * albums.
+ */
+public final class AlbumMatchContext {
+
+    public record TrackTarget(
+            AlbumTrack track,
+            String lowerTitle,
+            // Compiled from the lowercased title
+            BoundedEditDistance distanceFunc,
+            String numberAndTitle
+    ) {}
+
+    private final AlbumInfo albumInfo;
+    private final List<TrackTarget> targets;
+    private final TrackTitleIndex titleIndex;
+    private final DirectoryMatchCache directoryMatches;
+    private final DirectoryRejections directoryRejections = new DirectoryRejections();
+    // Ignores the case of US-ASCII letters only, the same as Pattern.CASE_INSENSITIVE
+    private final AhoCorasick artistMatcher;
+    private final boolean hasTrackContainingTitle;
+    // Only needed by the pattern strategy, so not built up front. Indexed the same as the targets, and ignores
+    // case the same way as the artist matcher.
+    private final Supplier<AhoCorasick> titleMatcher;
+
+    private AlbumMatchContext(AlbumInfo albumInfo) {
+        this.albumInfo = albumInfo;
+        this.targets = albumInfo.tracks().stream()
+                .map(t -> {
+                    final String lowerTitle = t.title().toLowerCase();
+                    return new TrackTarget(t, lowerTitle,
+                            BoundedEditDistance.compile(lowerTitle, editDistanceThreshold(t.title())), t.numberAndTitle());
+                })
+                .toList();
+        this.titleIndex = new TrackTitleIndex(targets.stream().map(TrackTarget::lowerTitle).toList(),
+                targets.stream().mapToInt(t -> t.distanceFunc().threshold()).toArray());
+        this.directoryMatches = new DirectoryMatchCache(targets);
+        this.artistMatcher = AhoCorasick.asciiCaseInsensitive(albumInfo.artists());
+        this.hasTrackContainingTitle = albumInfo.hasTrackContainingTitle();
+        this.titleMatcher = Suppliers.memoize(() -> AhoCorasick.asciiCaseInsensitive(
+                albumInfo.tracks().stream().map(AlbumTrack::title).toList()));
+    }
+
+    public static AlbumMatchContext of(AlbumInfo albumInfo) {
+        return new AlbumMatchContext(albumInfo);
+    }
+
+    public AlbumInfo albumInfo() {
+        return albumInfo;
+    }
+
+    public List<TrackTarget> targets() {
+        return targets;
+    }
+
+    public TrackTitleIndex titleIndex() {
+        return titleIndex;
+    }
+
+    public DirectoryMatchCache directoryMatches() {
+        return directoryMatches;
+    }
+
+    public DirectoryRejections directoryRejections() {
+        return directoryRejections;
+    }
+
+    public AhoCorasick artistMatcher() {
+        return artistMatcher;
+    }
+
+    public boolean hasTrackContainingTitle() {
+        return hasTrackContainingTitle;
+    }
+
+    public AhoCorasick titleMatcher() {
+        return titleMatcher.get();
+    }
+}
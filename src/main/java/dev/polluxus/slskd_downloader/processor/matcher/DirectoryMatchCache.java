@@ -0,0 +1,195 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
+import dev.polluxus.slskd_downloader.processor.matcher.AlbumMatchContext.TrackTarget;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputDirectory;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorFileResult.ProcessorMatchDetails;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorFileResultBuilder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers what a strategy matched in each directory of a search, so that the same directory shared by other
+ * users isn't sanitised and matched all over again. Directories are told apart by their file names and sizes,
+ * sorted, so copies listed in a different order are still the same. Matching only ever looks at the names, so a
+ * copy gets exactly the matches it would have had, with its own files swapped in.
+ */
+public final class DirectoryMatchCache {
+
+    /**
+     * @param directories directories matched through the cache
+     * @param reused directories whose matches came from an earlier copy
+     */
+    public record Stats(long directories, long reused) {
+
+        public double reusedRatio() {
+            return directories == 0 ? 0 : (double) reused / directories;
+        }
+    }
+
+    // One thing a strategy matched a file to
+    private record FileMatch(String numberAndTitle, ProcessorMatchDetails details) {}
+
+    private static final FileMatch[] NO_MATCHES = new FileMatch[0];
+
+    // Where each track key first appears in the album, so that a file's matches can be put back in the order
+    // the strategies find them
+    private final Map<String, Integer> trackPositions;
+    private final int trackCount;
+    // The matches of each file of a directory, in the order of its fingerprint
+    private final Map<Fingerprint, FileMatch[][]> entries = new ConcurrentHashMap<>();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    DirectoryMatchCache(List<TrackTarget> targets) {
+
+        this.trackCount = targets.size();
+        this.trackPositions = new HashMap<>(targets.size() * 2);
+        for (int t = 0; t < targets.size(); t++) {
+            trackPositions.putIfAbsent(targets.get(t).numberAndTitle(), t);
+        }
+    }
+
+    /**
+     * @return the matches in {@code dir}, from an earlier copy of it if there was one, otherwise from
+     * {@code match}. Either way they're the same as {@code match} would give.
+     */
+    public Map<String, List<ProcessorFileResultBuilder>> match(MatchStrategyType strategy,
+                                                               ProcessorInputDirectory dir,
+                                                               Supplier<Map<String, List<ProcessorFileResultBuilder>>> match) {
+
+        directories.increment();
+        final int[] slots = new int[dir.fileCount()];
+        final Fingerprint fingerprint = Fingerprint.of(strategy, dir, slots);
+        final FileMatch[][] cached = entries.get(fingerprint);
+        if (cached != null) {
+            reused.increment();
+            return rebuild(dir, slots, cached);
+        }
+        final Map<String, List<ProcessorFileResultBuilder>> matches = match.get();
+        final FileMatch[][] bySlot = bySlot(dir, slots, matches);
+        if (bySlot != null) {
+            entries.putIfAbsent(fingerprint, bySlot);
+        }
+        return matches;
+    }
+
+    public Stats stats() {
+        return new Stats(directories.sum(), reused.sum());
+    }
+
+    /**
+     * @return the matches of each file in fingerprint order, or null if they can't be told apart
+     */
+    private FileMatch[][] bySlot(ProcessorInputDirectory dir,
+                                 int[] slots,
+                                 Map<String, List<ProcessorFileResultBuilder>> matches) {
+
+        final FileMatch[][] ret = new FileMatch[dir.fileCount()][];
+        Arrays.fill(ret, NO_MATCHES);
+        if (matches.isEmpty()) {
+            return ret;
+        }
+        final Map<String, Integer> indexes = new HashMap<>(dir.fileCount() * 2);
+        for (int i = 0; i < dir.fileCount(); i++) {
+            indexes.putIfAbsent(dir.filename(i), i);
+        }
+        // The same path listed twice, there's no knowing which copy a match came from
+        if (indexes.size() != dir.fileCount()) {
+            return null;
+        }
+        final List<List<FileMatch>> lists = new ArrayList<>(Collections.nCopies(dir.fileCount(), null));
+        matches.forEach((numberAndTitle, builders) -> builders.forEach(b -> {
+            final int slot = slots[indexes.get(b.originalData().filename())];
+            if (lists.get(slot) == null) {
+                lists.set(slot, new ArrayList<>(2));
+            }
+            lists.get(slot).add(new FileMatch(numberAndTitle, b.matchDetails()));
+        }));
+        for (int slot = 0; slot < ret.length; slot++) {
+            final List<FileMatch> list = lists.get(slot);
+            if (list != null) {
+                list.sort(Comparator.comparingInt(m -> trackPositions.getOrDefault(m.numberAndTitle(), Integer.MAX_VALUE)));
+                ret[slot] = list.toArray(NO_MATCHES);
+            }
+        }
+        return ret;
+    }
+
+    // Walks the files in this copy's order, the same as the strategies do, so that everything comes out in the
+    // same order as if the copy had been matched itself
+    private Map<String, List<ProcessorFileResultBuilder>> rebuild(ProcessorInputDirectory dir,
+                                                                  int[] slots,
+                                                                  FileMatch[][] cached) {
+
+        final Map<String, List<ProcessorFileResultBuilder>> matches = new HashMap<>(trackCount);
+        for (int i = 0; i < dir.fileCount(); i++) {
+            final FileMatch[] fileMatches = cached[slots[i]];
+            if (fileMatches.length == 0) {
+                continue;
+            }
+            final SlskdSearchMatchResponse originalData = dir.file(i);
+            for (var m : fileMatches) {
+                matches.computeIfAbsent(m.numberAndTitle(), k -> new ArrayList<>())
+                        .add(ProcessorFileResultBuilder.builder()
+                                .originalData(originalData)
+                                .matchDetails(m.details()));
+            }
+        }
+        return matches;
+    }
+
+    private static final class Fingerprint {
+
+        private final MatchStrategyType strategy;
+        private final String[] names;
+        private final long[] sizes;
+        private final int hash;
+
+        private Fingerprint(MatchStrategyType strategy, String[] names, long[] sizes) {
+            this.strategy = strategy;
+            this.names = names;
+            this.sizes = sizes;
+            this.hash = 31 * (31 * strategy.hashCode() + Arrays.hashCode(names)) + Arrays.hashCode(sizes);
+        }
+
+        /**
+         * @param slots filled in with where each file of {@code dir} ends up in the fingerprint
+         */
+        static Fingerprint of(MatchStrategyType strategy, ProcessorInputDirectory dir, int[] slots) {
+
+            final Integer[] order = new Integer[dir.fileCount()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.<Integer, String>comparing(dir::name).thenComparingLong(dir::size));
+            final String[] names = new String[order.length];
+            final long[] sizes = new long[order.length];
+            for (int slot = 0; slot < order.length; slot++) {
+                names[slot] = dir.name(order[slot]);
+                sizes[slot] = dir.size(order[slot]);
+                slots[order[slot]] = slot;
+            }
+            return new Fingerprint(strategy, names, sizes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint f)) {
+                return false;
+            }
+            return hash == f.hash && strategy == f.strategy && Arrays.equals(sizes, f.sizes) && Arrays.equals(names, f.names);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
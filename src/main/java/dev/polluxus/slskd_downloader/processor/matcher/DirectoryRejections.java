@@ -0,0 +1,48 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the directories of a search that were thrown out before matching, and why.
+ */
+public final class DirectoryRejections {
+
+    public enum Reason {
+        // Nothing in it is an audio file, e.g. artwork, cue sheets and logs
+        NO_AUDIO,
+        // Every audio file is locked, so none can be downloaded
+        LOCKED,
+        // Every audio file that could be downloaded is empty
+        EMPTY,
+        // The user hasn't got enough audio files between all their directories to make up the album
+        TOO_FEW_FILES
+    }
+
+    private final Map<Reason, LongAdder> counts = new EnumMap<>(Reason.class);
+
+    DirectoryRejections() {
+        for (var r : Reason.values()) {
+            counts.put(r, new LongAdder());
+        }
+    }
+
+    public void add(Reason reason, int directories) {
+        counts.get(reason).add(directories);
+    }
+
+    /**
+     * @return how many directories have been thrown out for each reason so far
+     */
+    public Map<Reason, Long> counts() {
+
+        final Map<Reason, Long> ret = new EnumMap<>(Reason.class);
+        counts.forEach((r, c) -> ret.put(r, c.sum()));
+        return ret;
+    }
+
+    public long total() {
+        return counts.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+}
@@ -0,0 +1,240 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import dev.polluxus.slskd_downloader.util.AhoCorasick.Ascii;
+import dev.polluxus.slskd_downloader.util.FilenameUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Cuts a file name down to what should be the track title, by removing the extension, artist and album names,
+ * track numbers and featured artists. Does in one or two passes what the patterns in
+ * {@link dev.polluxus.slskd_downloader.util.Matchers} would, with the same results, but only allocates when the
+ * name actually changes.
+ */
+final class FilenameSanitiser {
+
+    private static final Logger log = LoggerFactory.getLogger(FilenameSanitiser.class);
+
+    private FilenameSanitiser() {
+    }
+
+    static String sanitise(final String name, final AlbumMatchContext context) {
+
+        String s = FilenameUtils.removeExtension(name);
+        // Every escape starts with an ampersand
+        if (s.indexOf('&') >= 0) {
+            s = StringEscapeUtils.unescapeHtml4(s);
+        }
+        s = maybeStripArtistNames(s, context);
+        s = maybeStripAlbumName(s, context);
+
+        // The rest only trims the front, until the featured artists
+        int from = leadingGarbageEnd(s, 0);
+        from = trackNumberEnd(s, from);
+        from = leadingGarbageEnd(s, from);
+        return stripFeaturedArtists(s, from);
+    }
+
+    private static String maybeStripArtistNames(final String filename, final AlbumMatchContext context) {
+
+        final List<String> artists = context.albumInfo().artists();
+        // One pass to see which artists are there at all. Once something's been removed though, the remainder
+        // could join up into another artist's name, so from then on each is looked for directly.
+        final boolean[] present = context.artistMatcher().occurring(filename);
+        String after = filename;
+        boolean removed = false;
+        for (int i = 0; i < artists.size(); i++) {
+            final String artist = artists.get(i);
+            if (artist.isEmpty() || (!removed && !present[i])) {
+                continue;
+            }
+            final int at = Ascii.indexOfIgnoreCase(after, artist, 0);
+            if (at >= 0) {
+                after = remove(after, at, at + artist.length());
+                removed = true;
+            }
+        }
+        // It's likely that the artist name is also the track name
+        if (removed && trackNumberEnd(after, 0) == after.length()) {
+            log.trace("Not stripping artist names ({}) from track {} because it would be empty after sanitisation!",
+                    String.join(" ", artists), filename);
+            return filename;
+        }
+        return after;
+    }
+
+    private static String maybeStripAlbumName(final String filename, final AlbumMatchContext context) {
+
+        final String album = context.albumInfo().name();
+        // If there's a track on this album that contains the title of the album,
+        // we expect the album title to occur at most once in the filename
+        final int expectedOccurrences = context.hasTrackContainingTitle() ? 1 : 0;
+        String strippedName = filename;
+        // Removing an empty name wouldn't change anything
+        if (!album.isEmpty()) {
+            final int first = Ascii.indexOfIgnoreCase(filename, album, 0);
+            int occurrences = 0;
+            for (int at = first; at >= 0 && occurrences <= expectedOccurrences; at = Ascii.indexOfIgnoreCase(filename, album, at + album.length())) {
+                occurrences++;
+            }
+            // Presumably the user has prefixed the track title with the album name, so just
+            // replace the first instance. It's possible to have a track name where the title
+            // is repeated more than once, so if we replace any more, we might miss matches.
+            if (occurrences > expectedOccurrences) {
+                strippedName = remove(filename, first, first + album.length());
+            }
+        }
+        // It's likely that the album name is also the track name
+        if (trackNumberEnd(strippedName, 0) == strippedName.length()) {
+            log.trace("Not stripping album name ({}) from track {} because it would be empty after sanitisation!",
+                    album, filename);
+            return filename;
+        }
+        return strippedName;
+    }
+
+    /**
+     * @return where the track number at {@code from} ends, or {@code from} if there isn't one. Tries the same
+     * forms as the track number patterns, in the same order: multi disk (1-01), vinyl side (A1 -) then generic.
+     */
+    static int trackNumberEnd(final CharSequence s, final int from) {
+
+        final int firstDigits = digitsEnd(s, from);
+        if (firstDigits > from && firstDigits < s.length() && s.charAt(firstDigits) == '-') {
+            final int secondDigits = digitsEnd(s, firstDigits + 1);
+            if (secondDigits > firstDigits + 1) {
+                return whitespaceEnd(s, secondDigits);
+            }
+        }
+
+        int i = from;
+        while (i < s.length() && isWordChar(s.charAt(i))) {
+            i++;
+        }
+        if (i > from) {
+            i = whitespaceEnd(s, i);
+            if (i < s.length() && s.charAt(i) == '-') {
+                return whitespaceEnd(s, i + 1);
+            }
+        }
+
+        return firstDigits > from ? leadingGarbageEnd(s, firstDigits) : from;
+    }
+
+    /**
+     * @return the end of any spaces, dots and dashes at {@code from}
+     */
+    static int leadingGarbageEnd(final CharSequence s, final int from) {
+
+        int i = from;
+        while (i < s.length() && isGarbage(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns {@code s} from {@code from} on, without any "(feat ...)" style parts (and the whitespace before
+     * them), and with curly apostrophes straightened.
+     */
+    private static String stripFeaturedArtists(final String s, final int from) {
+
+        StringBuilder sb = null;
+        int copied = from;
+        int searchFrom = from;
+        int open;
+        while ((open = s.indexOf('(', searchFrom)) >= 0) {
+            final int close = featuredArtistClose(s, open);
+            if (close < 0) {
+                searchFrom = open + 1;
+                continue;
+            }
+            int start = open;
+            while (start > copied && isWhitespace(s.charAt(start - 1))) {
+                start--;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(s.length() - from);
+            }
+            sb.append(s, copied, start);
+            copied = close + 1;
+            searchFrom = copied;
+        }
+
+        if (sb == null) {
+            final String ret = from == 0 ? s : s.substring(from);
+            return ret.indexOf('’') >= 0 ? ret.replace('’', '\'') : ret;
+        }
+        sb.append(s, copied, s.length());
+        for (int i = 0; i < sb.length(); i++) {
+            if (sb.charAt(i) == '’') {
+                sb.setCharAt(i, '\'');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the index of the bracket closing a featured artist part opened at {@code open}, or -1 if there
+     * isn't one. Like the pattern, this is the last one before the next opening bracket.
+     */
+    private static int featuredArtistClose(final String s, final int open) {
+
+        final int keywordEnd;
+        if (s.startsWith("feat", open + 1)) {
+            keywordEnd = open + 5;
+        } else if (s.startsWith("ft", open + 1)) {
+            keywordEnd = open + 3;
+        } else {
+            return -1;
+        }
+        final int nextOpen = s.indexOf('(', keywordEnd);
+        final int close = s.lastIndexOf(')', (nextOpen < 0 ? s.length() : nextOpen) - 1);
+        // At least one character has to come between the keyword and the bracket
+        return close > keywordEnd ? close : -1;
+    }
+
+    private static String remove(final String s, final int start, final int end) {
+
+        return new StringBuilder(s.length() - (end - start))
+                .append(s, 0, start)
+                .append(s, end, s.length())
+                .toString();
+    }
+
+    private static int digitsEnd(final CharSequence s, final int from) {
+
+        int i = from;
+        while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int whitespaceEnd(final CharSequence s, final int from) {
+
+        int i = from;
+        while (i < s.length() && isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // As in \s
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // As in \w
+    private static boolean isWordChar(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    // The patterns' "\s" is in a plain string literal, where it's just a space
+    private static boolean isGarbage(final char c) {
+        return c == ' ' || c == '.' || c == '-';
+    }
+}
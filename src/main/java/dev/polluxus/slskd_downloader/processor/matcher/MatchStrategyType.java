@@ -1,8 +1,7 @@
 package dev.polluxus.slskd_downloader.processor.matcher;
 
-import dev.polluxus.slskd_downloader.model.AlbumInfo;
 import dev.polluxus.slskd_downloader.processor.model.output.ProcessorFileResultBuilder;
-import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser.ProcessorInputDirectory;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputDirectory;
 
 import java.util.List;
 import java.util.Map;
@@ -17,7 +16,10 @@ public enum MatchStrategyType {
         this.func = func;
     }
 
-    public Map<String, List<ProcessorFileResultBuilder>> match(ProcessorInputDirectory resp, AlbumInfo albumInfo) {
-        return this.func.apply(resp, albumInfo);
+    /**
+     * Matches are remembered for the rest of the search, see {@link DirectoryMatchCache}.
+     */
+    public Map<String, List<ProcessorFileResultBuilder>> match(ProcessorInputDirectory resp, AlbumMatchContext context) {
+        return context.directoryMatches().match(this, resp, () -> this.func.apply(resp, context));
     }
 }
@@ -1,48 +1,48 @@
 package dev.polluxus.slskd_downloader.processor.matcher;
 
-import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
 import dev.polluxus.slskd_downloader.model.AlbumInfo.AlbumTrack;
+import dev.polluxus.slskd_downloader.processor.matcher.AlbumMatchContext.TrackTarget;
 import dev.polluxus.slskd_downloader.processor.model.output.ProcessorFileResultBuilder;
-import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser.ProcessorInputDirectory;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputDirectory;
 import dev.polluxus.slskd_downloader.processor.model.output.ProcessorMatchDetailsBuilder;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
+/**
+ * Matches files whose names contain a track's title, ignoring case. Titles are taken literally, and all of an
+ * album's titles are looked for together in one pass over each name.
+ */
 public class PatternMatchStrategy implements MatchStrategy {
 
-    private final ConcurrentMap<String, Map<Pattern, AlbumTrack>> patternCache = new ConcurrentHashMap<>();
-
     @Override
-    public Map<String, List<ProcessorFileResultBuilder>> apply(ProcessorInputDirectory resp, AlbumInfo albumInfo) {
+    public Map<String, List<ProcessorFileResultBuilder>> apply(ProcessorInputDirectory resp, AlbumMatchContext context) {
 
-        final Map<Pattern, AlbumTrack> patterns = patternCache.computeIfAbsent(albumInfo.searchString(), (k) -> {
-            return albumInfo.tracks().stream()
-                    .collect(Collectors.toMap(
-                            n -> Pattern.compile(n.title(), Pattern.CASE_INSENSITIVE),
-                            n -> n
-                    ));
-        });
+        final List<TrackTarget> targets = context.targets();
 
         // Iterate through all the responses and record the first one that matches
         // Generally the number of files in a given response will be as large as
         // or larger than the number of tracks in the request, so this is a good
         // choice, but you could also iterate according to whichever one was smaller.
-        Map<String, List<ProcessorFileResultBuilder>> matchesForPattern = new HashMap<>(patterns.size());
-        for (var currentResult : resp.files()) {
-            for (Pattern currentTarget : patterns.keySet()) {
-                if (currentTarget.matcher(currentResult.filename()).find()) {
-
+        Map<String, List<ProcessorFileResultBuilder>> matchesForPattern = new HashMap<>(targets.size());
+        for (int i = 0; i < resp.fileCount(); i++) {
+            final boolean[] found = context.titleMatcher().occurring(resp.name(i));
+            // Only rebuilt for files that match something
+            SlskdSearchMatchResponse originalData = null;
+            for (int t = 0; t < targets.size(); t++) {
+                if (found[t]) {
+
+                    if (originalData == null) {
+                        originalData = resp.file(i);
+                    }
+                    final AlbumTrack currentTrack = targets.get(t).track();
                     var pr = ProcessorFileResultBuilder.builder()
-                            .originalData(currentResult.originalData())
+                            .originalData(originalData)
                             .matchDetails(ProcessorMatchDetailsBuilder.builder()
-                                    .matchesTitle(currentTarget.toString())
-                                    .matchesNumber(patterns.get(currentTarget).number())
+                                    .matchesTitle(currentTrack.title())
+                                    .matchesNumber(currentTrack.number())
                                     .build());
-                    matchesForPattern.computeIfAbsent(patterns.get(currentTarget).numberAndTitle(), (k) -> new ArrayList<>()).add(pr);
+                    matchesForPattern.computeIfAbsent(targets.get(t).numberAndTitle(), (k) -> new ArrayList<>()).add(pr);
                 }
             }
         }
@@ -0,0 +1,106 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bigram and length index over an album's (lowercased) track titles, used to rule out most file and track pairs
+ * before working out their edit distance. A pair can only be within k edits if their lengths differ by at most k,
+ * and if they share at least {@code max(length) - 1 - 2k} bigrams, since each edit breaks at most two. Pairs
+ * failing either are certain to be over the threshold, so leaving them out doesn't change any results.
+ */
+public final class TrackTitleIndex {
+
+    /**
+     * @param pairs file and track pairs checked against the index
+     * @param pruned pairs that were ruled out without working out their edit distance
+     */
+    public record Stats(long pairs, long pruned) {
+
+        public double prunedRatio() {
+            return pairs == 0 ? 0 : (double) pruned / pairs;
+        }
+    }
+
+    // The tracks each bigram appears in, and how many times
+    private record Posting(int[] tracks, int[] counts) {}
+
+    private final int[] lengths;
+    private final int[] thresholds;
+    private final Map<Integer, Posting> postings;
+    private final LongAdder pairs = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+
+    TrackTitleIndex(List<String> lowerTitles, int[] thresholds) {
+
+        this.lengths = lowerTitles.stream().mapToInt(String::length).toArray();
+        this.thresholds = thresholds;
+        final Map<Integer, Map<Integer, Integer>> counts = new HashMap<>();
+        for (int t = 0; t < lowerTitles.size(); t++) {
+            final String title = lowerTitles.get(t);
+            for (int i = 0; i + 1 < title.length(); i++) {
+                counts.computeIfAbsent(bigram(title, i), k -> new HashMap<>()).merge(t, 1, Integer::sum);
+            }
+        }
+        this.postings = new HashMap<>(counts.size() * 2);
+        counts.forEach((gram, byTrack) -> postings.put(gram, new Posting(
+                byTrack.keySet().stream().mapToInt(Integer::intValue).toArray(),
+                byTrack.values().stream().mapToInt(Integer::intValue).toArray())));
+    }
+
+    private static int bigram(CharSequence s, int i) {
+        return (s.charAt(i) << 16) | s.charAt(i + 1);
+    }
+
+    /**
+     * @return for each track, whether {@code lowerName} could be within that track's threshold
+     */
+    public boolean[] candidates(String lowerName) {
+
+        final int n = lowerName.length();
+        final int[] shared = new int[lengths.length];
+        if (n >= 2) {
+            // Sorted, so that repeats of a bigram are counted together
+            final int[] grams = new int[n - 1];
+            for (int i = 0; i + 1 < n; i++) {
+                grams[i] = bigram(lowerName, i);
+            }
+            Arrays.sort(grams);
+            for (int i = 0; i < grams.length; ) {
+                int run = 1;
+                while (i + run < grams.length && grams[i + run] == grams[i]) {
+                    run++;
+                }
+                final Posting posting = postings.get(grams[i]);
+                if (posting != null) {
+                    final int[] tracks = posting.tracks();
+                    final int[] counts = posting.counts();
+                    for (int p = 0; p < tracks.length; p++) {
+                        shared[tracks[p]] += Math.min(run, counts[p]);
+                    }
+                }
+                i += run;
+            }
+        }
+
+        final boolean[] candidates = new boolean[lengths.length];
+        int prunedHere = 0;
+        for (int t = 0; t < lengths.length; t++) {
+            final int k = thresholds[t];
+            candidates[t] = Math.abs(n - lengths[t]) <= k && shared[t] >= Math.max(n, lengths[t]) - 1 - 2 * k;
+            if (!candidates[t]) {
+                prunedHere++;
+            }
+        }
+        pairs.add(lengths.length);
+        pruned.add(prunedHere);
+        return candidates;
+    }
+
+    public Stats stats() {
+        return new Stats(pairs.sum(), pruned.sum());
+    }
+}
@@ -0,0 +1,187 @@
+package dev.polluxus.slskd_downloader.processor.model.input;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
+import dev.polluxus.slskd_downloader.util.FilenameUtils;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The files a user has in one directory, stored column-wise: each file is a path prefix and a name (both interned
+ * in the search's {@link SearchStringTable}) and a handful of primitives, rather than a full path string and a
+ * response object. Matching works on the names directly, and a file's response is only rebuilt with {@link #file}
+ * once it's matched.
+ */
+public final class ProcessorInputDirectory {
+
+    // Stands in for the optional attributes that slskd left out
+    public static final int ABSENT = Integer.MIN_VALUE;
+
+    private final String parentDirName;
+    // Everything up to and including the last separator. Files with the same parent name may still have
+    // different paths, e.g. CD1 directories of different albums.
+    private final String[] paths;
+    private final String[] names;
+    private final String[] extensions;
+    private final int[] codes;
+    private final long[] sizes;
+    private final boolean[] locked;
+    private final int[] bitDepths;
+    private final int[] bitRates;
+    private final int[] lengths;
+
+    private ProcessorInputDirectory(Builder b) {
+        this.parentDirName = b.parentDirName;
+        this.paths = Arrays.copyOf(b.paths, b.count);
+        this.names = Arrays.copyOf(b.names, b.count);
+        this.extensions = Arrays.copyOf(b.extensions, b.count);
+        this.codes = Arrays.copyOf(b.codes, b.count);
+        this.sizes = Arrays.copyOf(b.sizes, b.count);
+        this.locked = Arrays.copyOf(b.locked, b.count);
+        this.bitDepths = Arrays.copyOf(b.bitDepths, b.count);
+        this.bitRates = Arrays.copyOf(b.bitRates, b.count);
+        this.lengths = Arrays.copyOf(b.lengths, b.count);
+    }
+
+    public String parentDirName() {
+        return parentDirName;
+    }
+
+    public int fileCount() {
+        return names.length;
+    }
+
+    /**
+     * @return the name of the i-th file, without its path
+     */
+    public String name(int i) {
+        return names[i];
+    }
+
+    public long size(int i) {
+        return sizes[i];
+    }
+
+    public boolean locked(int i) {
+        return locked[i];
+    }
+
+    public String filename(int i) {
+        return paths[i] + names[i];
+    }
+
+    /**
+     * Rebuilds the i-th file as slskd sent it.
+     */
+    public SlskdSearchMatchResponse file(int i) {
+        return new SlskdSearchMatchResponse(codes[i], extensions[i], filename(i), sizes[i], locked[i],
+                optional(bitDepths[i]), optional(bitRates[i]), optional(lengths[i]));
+    }
+
+    private static Optional<Integer> optional(int value) {
+        return value == ABSENT ? Optional.empty() : Optional.of(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ProcessorInputDirectory d)) {
+            return false;
+        }
+        return parentDirName.equals(d.parentDirName)
+                && Arrays.equals(paths, d.paths)
+                && Arrays.equals(names, d.names)
+                && Arrays.equals(extensions, d.extensions)
+                && Arrays.equals(codes, d.codes)
+                && Arrays.equals(sizes, d.sizes)
+                && Arrays.equals(locked, d.locked)
+                && Arrays.equals(bitDepths, d.bitDepths)
+                && Arrays.equals(bitRates, d.bitRates)
+                && Arrays.equals(lengths, d.lengths);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(parentDirName, Arrays.hashCode(paths), Arrays.hashCode(names), Arrays.hashCode(sizes));
+    }
+
+    @Override
+    public String toString() {
+        return STR."ProcessorInputDirectory[parentDirName=\{parentDirName}, names=\{Arrays.toString(names)}]";
+    }
+
+    public static Builder builder(String parentDirName) {
+        return new Builder(parentDirName);
+    }
+
+    public static class Builder {
+
+        private static final int INITIAL_CAPACITY = 8;
+
+        private final String parentDirName;
+        private int count = 0;
+        private String[] paths = new String[INITIAL_CAPACITY];
+        private String[] names = new String[INITIAL_CAPACITY];
+        private String[] extensions = new String[INITIAL_CAPACITY];
+        private int[] codes = new int[INITIAL_CAPACITY];
+        private long[] sizes = new long[INITIAL_CAPACITY];
+        private boolean[] locked = new boolean[INITIAL_CAPACITY];
+        private int[] bitDepths = new int[INITIAL_CAPACITY];
+        private int[] bitRates = new int[INITIAL_CAPACITY];
+        private int[] lengths = new int[INITIAL_CAPACITY];
+
+        private Builder(String parentDirName) {
+            this.parentDirName = parentDirName;
+        }
+
+        /**
+         * @param bitDepth {@link #ABSENT} if unknown, likewise for bitRate and length
+         */
+        public Builder add(SearchStringTable strings, int code, String extension, String filename, long size,
+                           boolean isLocked, int bitDepth, int bitRate, int length) {
+
+            if (count == names.length) {
+                grow();
+            }
+            final int split = FilenameUtils.indexOfLastSeparator(filename) + 1;
+            paths[count] = strings.intern(filename.substring(0, split));
+            names[count] = strings.intern(filename.substring(split));
+            extensions[count] = extension == null ? null : strings.intern(extension);
+            codes[count] = code;
+            sizes[count] = size;
+            locked[count] = isLocked;
+            bitDepths[count] = bitDepth;
+            bitRates[count] = bitRate;
+            lengths[count] = length;
+            count++;
+            return this;
+        }
+
+        public Builder add(SearchStringTable strings, SlskdSearchMatchResponse m) {
+
+            return add(strings, m.code(), m.extension(), m.filename(), m.size(), m.isLocked(),
+                    m.bitDepth().orElse(ABSENT), m.bitRate().orElse(ABSENT), m.length().orElse(ABSENT));
+        }
+
+        private void grow() {
+
+            final int capacity = names.length * 2;
+            paths = Arrays.copyOf(paths, capacity);
+            names = Arrays.copyOf(names, capacity);
+            extensions = Arrays.copyOf(extensions, capacity);
+            codes = Arrays.copyOf(codes, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            locked = Arrays.copyOf(locked, capacity);
+            bitDepths = Arrays.copyOf(bitDepths, capacity);
+            bitRates = Arrays.copyOf(bitRates, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+
+        public ProcessorInputDirectory build() {
+            return new ProcessorInputDirectory(this);
+        }
+    }
+}
@@ -3,37 +3,90 @@ package dev.polluxus.slskd_downloader.processor.model.input;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
 import dev.polluxus.slskd_downloader.util.FilenameUtils;
-import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import static java.util.stream.Collectors.mapping;
+import java.util.Map;
 
 public record ProcessorInputUser(
+        // The user's response, without its files, which are held by the directories instead
         SlskdSearchDetailResponse originalData,
         List<ProcessorInputDirectory> directories
 ) {
 
-    public record ProcessorInputDirectory(
-            String parentDirName,
-            List<ProcessorInputFile> files
-    ) {}
+    /**
+     * Groups files by directory as they're added, in the order each directory is first seen.
+     */
+    public static class DirectoryGrouper {
+
+        private final SearchStringTable strings;
+        private final Map<String, ProcessorInputDirectory.Builder> byDirectory = new LinkedHashMap<>();
+
+        public DirectoryGrouper(SearchStringTable strings) {
+            this.strings = strings;
+        }
+
+        public void add(int code, String extension, String filename, long size, boolean isLocked,
+                        int bitDepth, int bitRate, int length) {
+
+            directory(filename).add(strings, code, extension, filename, size, isLocked, bitDepth, bitRate, length);
+        }
+
+        public void add(SlskdSearchMatchResponse m) {
+
+            directory(m.filename()).add(strings, m);
+        }
+
+        private ProcessorInputDirectory.Builder directory(String filename) {
+
+            return byDirectory.computeIfAbsent(strings.intern(FilenameUtils.getParentName(filename)),
+                    ProcessorInputDirectory::builder);
+        }
+
+        public List<ProcessorInputDirectory> build() {
 
-    public record ProcessorInputFile(
-            SlskdSearchMatchResponse originalData,
-            String filename
-    ) {}
+            final List<ProcessorInputDirectory> directories = new ArrayList<>(byDirectory.size());
+            byDirectory.values().forEach(b -> directories.add(b.build()));
+            return directories;
+        }
+    }
 
+    /**
+     * Groups all of a response's files by directory. Responses read with the client's search input decoder
+     * already come grouped, and with the locked and non-audio files left out.
+     */
     public static ProcessorInputUser convert(SlskdSearchDetailResponse r) {
 
-        final var userDirectories = r.files().stream()
-                .map(m -> Pair.of(m, FilenameUtils.getParentName(m.filename())))
-                .collect(Collectors.groupingBy(Pair::getValue, mapping(Pair::getKey, Collectors.toList())))
-                .entrySet().stream()
-                .map(e -> new ProcessorInputDirectory(e.getKey(), e.getValue().stream()
-                        .map(m -> new ProcessorInputFile(m, m.filename())).toList()))
-                .toList();
-        return new ProcessorInputUser(r, userDirectories);
+        return convert(r, new SearchStringTable());
+    }
+
+    public static ProcessorInputUser convert(SlskdSearchDetailResponse r, SearchStringTable strings) {
+
+        final DirectoryGrouper grouper = new DirectoryGrouper(strings);
+        r.files().forEach(grouper::add);
+        return new ProcessorInputUser(withoutFiles(r), grouper.build());
+    }
+
+    public static SlskdSearchDetailResponse withoutFiles(SlskdSearchDetailResponse r) {
+
+        return new SlskdSearchDetailResponse(r.fileCount(), r.hasFreeUploadSlot(), r.lockedFileCount(), List.of(),
+                r.queueLength(), r.token(), r.uploadSpeed(), r.username(), List.of());
+    }
+
+    /**
+     * Rebuilds the response as slskd sent it, less anything that was dropped while decoding.
+     */
+    public SlskdSearchDetailResponse toResponse() {
+
+        final List<SlskdSearchMatchResponse> files = new ArrayList<>();
+        for (var d : directories) {
+            for (int i = 0; i < d.fileCount(); i++) {
+                files.add(d.file(i));
+            }
+        }
+        return new SlskdSearchDetailResponse(originalData.fileCount(), originalData.hasFreeUploadSlot(),
+                originalData.lockedFileCount(), originalData.lockedFiles(), originalData.queueLength(),
+                originalData.token(), originalData.uploadSpeed(), originalData.username(), files);
     }
 }
@@ -0,0 +1,24 @@
+package dev.polluxus.slskd_downloader.processor.model.input;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns the directory paths and file names of a single search, so that the same path shared by every file
+ * in a directory, or the same file name shared by several users, is only held once. Not thread safe, a table
+ * is meant to be filled by the one thread decoding the search.
+ */
+public class SearchStringTable {
+
+    private final Map<String, String> strings = new HashMap<>();
+
+    public String intern(final String s) {
+
+        final String existing = strings.putIfAbsent(s, s);
+        return existing != null ? existing : s;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+}
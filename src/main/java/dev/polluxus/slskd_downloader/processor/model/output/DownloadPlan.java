@@ -0,0 +1,29 @@
+package dev.polluxus.slskd_downloader.processor.model.output;
+
+import java.util.List;
+
+/**
+ * What's needed to download an album from one user, and nothing else: the files picked for each track and the
+ * numbers the user was ranked by. Meant to be held for as long as a download takes, in place of the
+ * {@link ProcessorUserResult} it came from.
+ */
+public record DownloadPlan(
+        String username,
+        int uploadSpeed,
+        double score,
+        List<PlannedFile> files
+) {
+
+    public record PlannedFile(
+            String filename,
+            long size,
+            double score
+    ) {}
+
+    public static DownloadPlan of(ProcessorUserResult r) {
+
+        return new DownloadPlan(r.username(), r.uploadSpeed(), r.scoreOfBestCandidates(), r.bestCandidates().stream()
+                .map(f -> new PlannedFile(f.originalData().filename(), f.originalData().size(), f.score()))
+                .toList());
+    }
+}
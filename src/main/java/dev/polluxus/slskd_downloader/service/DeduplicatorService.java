@@ -34,7 +34,7 @@ public class DeduplicatorService {
                 .flatMap(e -> e.metadata().stream())
                 // Try to match any of the artists to it
                 .filter(md -> albumInfo.artists().stream()
-                        .anyMatch(e -> Matchers.getEditDistanceFunc(e).apply(e, md.artistName()) != -1))
+                        .anyMatch(e -> Matchers.editDistance(e, md.artistName()) != -1))
                 .toList();
         if (matches.isEmpty()) {
             log.debug("No preexisting library item found for {}", albumInfo.searchString());
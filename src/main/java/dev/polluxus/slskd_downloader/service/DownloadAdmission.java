@@ -0,0 +1,58 @@
+package dev.polluxus.slskd_downloader.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Hands out permission to start downloads without blocking the caller. The number of free slots is
+ * recalculated on every download poll. Callers that arrive while every slot is taken get a future that
+ * is completed, in order of arrival, once a poll sees capacity free up.
+ */
+class DownloadAdmission {
+
+    private final Executor releaseExecutor;
+
+    // Guarded by 'this'
+    private final Queue<CompletableFuture<Void>> waiters;
+    private int available;
+
+    DownloadAdmission(int initialLimit, Executor releaseExecutor) {
+        this.releaseExecutor = releaseExecutor;
+        this.waiters = new ArrayDeque<>();
+        this.available = initialLimit;
+    }
+
+    synchronized CompletableFuture<Void> acquire() {
+
+        // Don't jump the queue if others are already waiting
+        if (available > 0 && waiters.isEmpty()) {
+            available--;
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        waiters.add(permit);
+        return permit;
+    }
+
+    /**
+     * Called from the download poll with the latest view of how many downloads are active.
+     */
+    void update(int activeDownloads, int limit) {
+
+        final List<CompletableFuture<Void>> released = new ArrayList<>();
+        synchronized (this) {
+            available = limit - activeDownloads;
+            while (available > 0 && !waiters.isEmpty()) {
+                released.add(waiters.poll());
+                available--;
+            }
+        }
+        // Complete the permits elsewhere, so that whatever the waiters chain onto them
+        // doesn't run on the polling thread
+        released.forEach(p -> releaseExecutor.execute(() -> p.complete(null)));
+    }
+}
@@ -0,0 +1,147 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Finds the number of users to download from at once that makes the best use of the connection.
+ * <p>
+ * Aggregate throughput is measured from the growth of {@code bytesTransferred} between polls. Every
+ * evaluation window the limit is moved by a small step (hill climbing): if the previous move improved
+ * throughput we keep going in the same direction, if it made things worse we turn around, and if it made
+ * no real difference we back off, since the extra connections weren't buying anything. A move counts as
+ * making a difference if throughput changed by at least half as much, proportionally, as the limit did.
+ * The limit is only moved while it's actually what's holding downloads back.
+ */
+public class DownloadConcurrencyController {
+
+    private static final Logger log = LoggerFactory.getLogger(DownloadConcurrencyController.class);
+
+    static final int MIN_LIMIT = 2;
+    static final int MAX_LIMIT = 100;
+    // Polls per evaluation window. Throughput is noisy as downloads start and finish, so average over a while.
+    static final int EVALUATION_POLLS = 15;
+    // The limit counts as binding if on average this fraction of it was in use
+    static final double SATURATION = 0.9;
+
+    private int limit;
+    private int direction = 1;
+    // Relative size of the last change to the limit, 0 if it hasn't moved yet
+    private double lastStepFraction = 0;
+    private double measuredBytesPerSecond = 0;
+    private double previousWindowBytesPerSecond = -1;
+
+    // Username -> file -> bytes transferred as of the last poll that fetched the user
+    private Map<String, Map<UUID, Long>> lastBytesTransferred = new HashMap<>();
+    private long lastObservedAtMillis = -1;
+
+    private double windowBytesPerSecondSum = 0;
+    private long windowActiveUsersSum = 0;
+    private int windowSamples = 0;
+
+    public DownloadConcurrencyController(int initialLimit) {
+        this.limit = Math.clamp(initialLimit, MIN_LIMIT, MAX_LIMIT);
+    }
+
+    /**
+     * Records a snapshot of the downloads from the download poll.
+     *
+     * @param unfetchedUsers users the poll tried and failed to fetch. What was last seen of their transfers is
+     *                       kept, so that everything they transferred in the meantime counts once they're fetched again.
+     */
+    public synchronized void observe(List<SlskdGetDownloadResponse> downloads, Collection<String> unfetchedUsers,
+                                     int activeUsers, long nowMillis) {
+
+        long transferred = 0;
+        final Map<String, Map<UUID, Long>> seen = new HashMap<>();
+        for (var user : unfetchedUsers) {
+            final Map<UUID, Long> previous = lastBytesTransferred.get(user);
+            if (previous != null) {
+                seen.put(user, previous);
+            }
+        }
+        for (var user : downloads) {
+            final Map<UUID, Long> previous = lastBytesTransferred.getOrDefault(user.username(), Map.of());
+            final Map<UUID, Long> current = new HashMap<>();
+            for (var dir : user.directories()) {
+                for (var file : dir.files()) {
+                    if (file.id() == null) {
+                        continue;
+                    }
+                    final Long before = previous.get(file.id());
+                    if (before != null) {
+                        transferred += Math.max(0, file.bytesTransferred() - before);
+                    }
+                    current.put(file.id(), file.bytesTransferred());
+                }
+            }
+            seen.put(user.username(), current);
+        }
+        lastBytesTransferred = seen;
+
+        final long previousObservation = lastObservedAtMillis;
+        lastObservedAtMillis = nowMillis;
+        if (previousObservation == -1 || nowMillis <= previousObservation) {
+            return;
+        }
+        onSample(transferred * 1000.0 / (nowMillis - previousObservation), activeUsers);
+    }
+
+    synchronized void onSample(double bytesPerSecond, int activeUsers) {
+
+        windowBytesPerSecondSum += bytesPerSecond;
+        windowActiveUsersSum += activeUsers;
+        if (++windowSamples < EVALUATION_POLLS) {
+            return;
+        }
+        final double throughput = windowBytesPerSecondSum / windowSamples;
+        final double averageActive = (double) windowActiveUsersSum / windowSamples;
+        windowBytesPerSecondSum = 0;
+        windowActiveUsersSum = 0;
+        windowSamples = 0;
+        measuredBytesPerSecond = throughput;
+
+        final double previous = previousWindowBytesPerSecond;
+        previousWindowBytesPerSecond = throughput;
+        if (averageActive < limit * SATURATION) {
+            // The limit isn't what's holding us back, so moving it tells us nothing
+            lastStepFraction = 0;
+            return;
+        }
+        if (previous >= 0 && lastStepFraction > 0) {
+            final double change = (throughput - previous) / Math.max(previous, 1);
+            final double significant = lastStepFraction / 2;
+            if (change < -significant) {
+                direction = -direction;
+            } else if (change <= significant) {
+                direction = -1;
+            }
+        }
+        final int step = Math.max(1, limit / 10);
+        final int newLimit = Math.clamp(limit + direction * step, MIN_LIMIT, MAX_LIMIT);
+        lastStepFraction = (double) Math.abs(newLimit - limit) / limit;
+        if (newLimit == limit) {
+            // Up against one of the bounds, try the other way next time
+            direction = -direction;
+        } else {
+            log.info("Adjusting download concurrency limit from {} to {} (measured {} KB/s over {} active users)",
+                    limit, newLimit, Math.round(throughput / 1024), Math.round(averageActive));
+            limit = newLimit;
+        }
+    }
+
+    public synchronized int currentLimit() {
+        return limit;
+    }
+
+    public synchronized double measuredBytesPerSecond() {
+        return measuredBytesPerSecond;
+    }
+}
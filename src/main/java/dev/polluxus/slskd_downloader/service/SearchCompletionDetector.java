@@ -0,0 +1,119 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchStateResponse;
+
+/**
+ * Decides when a running search has gathered everything it's likely to get. Rather than waiting for
+ * slskd's own timeout, the search is considered finished once its response and file counts stop growing
+ * for a few polls in a row. The interval between polls backs off while nothing is changing and resets
+ * as soon as new responses arrive.
+ */
+public class SearchCompletionDetector {
+
+    public enum Outcome {
+        /** Keep polling */
+        PENDING,
+        /** slskd reported the search as completed */
+        COMPLETED,
+        /** The counts stopped changing, so the search was stopped early */
+        PLATEAUED,
+        /** The caller reported that enough good results had been received */
+        ENOUGH_MATCHES,
+        /** The hard limit on search duration was reached */
+        TIMED_OUT
+    }
+
+    static final long INITIAL_POLL_INTERVAL_MILLIS = 500;
+    static final long MAX_POLL_INTERVAL_MILLIS = 4000;
+    static final double BACKOFF_FACTOR = 1.6;
+    // Number of consecutive polls without any new responses before the search is considered done
+    static final int PLATEAU_POLLS = 4;
+    // Don't call a plateau before this point, responses are often slow to start arriving
+    static final long MIN_SEARCH_MILLIS = 5000;
+    static final long MAX_SEARCH_MILLIS = 45000;
+
+    private final long startedAtMillis;
+
+    private int lastResponseCount = -1;
+    private int lastFileCount = -1;
+    private int unchangedPolls = 0;
+    private boolean grewOnLastPoll = false;
+    private long pollIntervalMillis = INITIAL_POLL_INTERVAL_MILLIS;
+    private int polls = 0;
+    private Outcome outcome = Outcome.PENDING;
+
+    public SearchCompletionDetector() {
+        this(System.currentTimeMillis());
+    }
+
+    SearchCompletionDetector(long startedAtMillis) {
+        this.startedAtMillis = startedAtMillis;
+    }
+
+    public Outcome observe(SlskdSearchStateResponse state) {
+
+        return observe(state, System.currentTimeMillis());
+    }
+
+    Outcome observe(SlskdSearchStateResponse state, long nowMillis) {
+
+        if (outcome != Outcome.PENDING) {
+            return outcome;
+        }
+        polls++;
+
+        grewOnLastPoll = state.responseCount() > lastResponseCount || state.fileCount() > lastFileCount;
+        lastResponseCount = state.responseCount();
+        lastFileCount = state.fileCount();
+        if (grewOnLastPoll) {
+            unchangedPolls = 0;
+            pollIntervalMillis = INITIAL_POLL_INTERVAL_MILLIS;
+        } else {
+            unchangedPolls++;
+            pollIntervalMillis = Math.min((long) (pollIntervalMillis * BACKOFF_FACTOR), MAX_POLL_INTERVAL_MILLIS);
+        }
+
+        final long elapsed = nowMillis - startedAtMillis;
+        if (state.state().contains("Completed")) {
+            outcome = Outcome.COMPLETED;
+        } else if (elapsed >= MAX_SEARCH_MILLIS) {
+            outcome = Outcome.TIMED_OUT;
+        } else if (lastResponseCount > 0 && unchangedPolls >= PLATEAU_POLLS && elapsed >= MIN_SEARCH_MILLIS) {
+            outcome = Outcome.PLATEAUED;
+        }
+        return outcome;
+    }
+
+    /**
+     * Marks the search as finished because the caller has received enough good results.
+     */
+    public void enoughMatches() {
+
+        if (outcome == Outcome.PENDING) {
+            outcome = Outcome.ENOUGH_MATCHES;
+        }
+    }
+
+    public Outcome outcome() {
+        return outcome;
+    }
+
+    /**
+     * @return whether the most recent observation saw more responses or files than the one before it.
+     */
+    public boolean grewOnLastPoll() {
+        return grewOnLastPoll;
+    }
+
+    public long nextPollDelayMillis() {
+        return pollIntervalMillis;
+    }
+
+    public int polls() {
+        return polls;
+    }
+
+    public int responseCount() {
+        return Math.max(lastResponseCount, 0);
+    }
+}
@@ -0,0 +1,174 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.config.Config;
+import dev.polluxus.slskd_downloader.util.Validations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps up to {@code maxInFlight} searches running at all times. As soon as one search finishes the next
+ * queued one is started, so a single slow search no longer holds up the rest of the batch.
+ * <p>
+ * Submissions to the network are additionally throttled by a minimum spacing between two consecutive
+ * searches and by a token bucket refilled at {@code searchesPerSecond}.
+ */
+public class SearchScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchScheduler.class);
+
+    static final long DEFAULT_MIN_SPACING_MILLIS = 1000;
+    static final double DEFAULT_SEARCHES_PER_SECOND = 0.5;
+
+    private final int maxInFlight;
+    private final long minSpacingNanos;
+    private final double searchesPerSecond;
+    private final double bucketCapacity;
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService dispatcher;
+    private final Queue<PendingSearch<?>> queue;
+    private final AtomicInteger inFlight;
+
+    // Guarded by 'this'
+    private double tokens;
+    private long lastRefillNanos;
+    private long lastSubmitNanos;
+    private boolean drainScheduled;
+
+    private final AtomicLong dispatched;
+    private final AtomicLong totalWaitNanos;
+    private final AtomicLong maxWaitNanos;
+
+    private record PendingSearch<T>(Supplier<T> task, CompletableFuture<T> result, long enqueuedAtNanos) {}
+
+    public record Stats(int queueDepth, int inFlight, long dispatched, Duration averageWait, Duration maxWait) {}
+
+    public SearchScheduler(int maxInFlight, long minSpacingMillis, double searchesPerSecond) {
+        this.maxInFlight = Validations.requirePositive(maxInFlight);
+        if (minSpacingMillis < 0 || searchesPerSecond <= 0) {
+            throw new RuntimeException(
+                    STR."Invalid search throttle: spacing \{minSpacingMillis}ms, \{searchesPerSecond} searches/sec");
+        }
+        this.minSpacingNanos = TimeUnit.MILLISECONDS.toNanos(minSpacingMillis);
+        this.searchesPerSecond = searchesPerSecond;
+        // Allow a burst of up to one second's worth of searches, but always at least one
+        this.bucketCapacity = Math.max(1.0, searchesPerSecond);
+        this.workers = Executors.newFixedThreadPool(maxInFlight);
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor();
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.inFlight = new AtomicInteger();
+        this.tokens = bucketCapacity;
+        this.lastRefillNanos = System.nanoTime();
+        // Far enough in the past that the first search isn't held back by the spacing
+        this.lastSubmitNanos = lastRefillNanos - minSpacingNanos;
+        this.dispatched = new AtomicLong();
+        this.totalWaitNanos = new AtomicLong();
+        this.maxWaitNanos = new AtomicLong();
+    }
+
+    public static SearchScheduler from(Config config) {
+
+        return new SearchScheduler(config.searchConcurrency(), config.searchMinSpacingMillis(), config.searchesPerSecond());
+    }
+
+    /**
+     * Queues a search for execution. The returned future completes with the result of the task once a slot
+     * has become available and the task has run.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        queue.add(new PendingSearch<>(task, result, System.nanoTime()));
+        drain();
+        return result;
+    }
+
+    public Stats stats() {
+
+        final long count = dispatched.get();
+        return new Stats(
+                queue.size(),
+                inFlight.get(),
+                count,
+                Duration.ofNanos(count == 0 ? 0 : totalWaitNanos.get() / count),
+                Duration.ofNanos(maxWaitNanos.get()));
+    }
+
+    private synchronized void drain() {
+
+        while (!queue.isEmpty() && inFlight.get() < maxInFlight) {
+            final long now = System.nanoTime();
+            refill(now);
+            final long spacingWait = lastSubmitNanos + minSpacingNanos - now;
+            final long tokenWait = tokens >= 1.0 ? 0 : (long) ((1.0 - tokens) / searchesPerSecond * 1e9);
+            final long wait = Math.max(spacingWait, tokenWait);
+            if (wait > 0) {
+                scheduleDrain(wait);
+                return;
+            }
+            tokens -= 1.0;
+            lastSubmitNanos = now;
+            dispatch(queue.poll(), now);
+        }
+    }
+
+    private <T> void dispatch(PendingSearch<T> pending, long now) {
+
+        final long waited = now - pending.enqueuedAtNanos();
+        dispatched.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        inFlight.incrementAndGet();
+
+        CompletableFuture.supplyAsync(pending.task(), workers)
+                .whenComplete((r, t) -> {
+                    inFlight.decrementAndGet();
+                    if (t != null) {
+                        pending.result().completeExceptionally(t);
+                    } else {
+                        pending.result().complete(r);
+                    }
+                    drain();
+                });
+    }
+
+    private void refill(long now) {
+
+        tokens = Math.min(bucketCapacity, tokens + (now - lastRefillNanos) / 1e9 * searchesPerSecond);
+        lastRefillNanos = now;
+    }
+
+    private void scheduleDrain(long waitNanos) {
+
+        if (drainScheduled) {
+            return;
+        }
+        drainScheduled = true;
+        log.trace("Search submission throttled for {}ms", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        dispatcher.schedule(() -> {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+            drain();
+        }, waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void shutdown() {
+        this.dispatcher.shutdownNow();
+        this.workers.shutdownNow();
+        try {
+            this.dispatcher.awaitTermination(15000, TimeUnit.MILLISECONDS);
+            this.workers.awaitTermination(15000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            log.error("Error terminating search scheduler", e);
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,25 +2,32 @@ package dev.polluxus.slskd_downloader.service;
 
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse;
-import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadFileResponse;
 import dev.polluxus.slskd_downloader.config.Config;
 import dev.polluxus.slskd_downloader.client.slskd.SlskdClient;
+import dev.polluxus.slskd_downloader.client.slskd.SlskdEventClient;
+import dev.polluxus.slskd_downloader.client.slskd.SearchResponseDecoder;
 import dev.polluxus.slskd_downloader.client.slskd.request.SlskdDownloadRequest;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchStateResponse;
 import dev.polluxus.slskd_downloader.config.ThreadPoolConfig;
 import dev.polluxus.slskd_downloader.model.AlbumInfo;
 import dev.polluxus.slskd_downloader.model.UserAndFile;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.processor.model.input.SearchStringTable;
+import dev.polluxus.slskd_downloader.service.SearchCompletionDetector.Outcome;
+import dev.polluxus.slskd_downloader.store.SearchResultCache;
 import dev.polluxus.slskd_downloader.util.FutureUtils;
+import dev.polluxus.slskd_downloader.util.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.BiConsumer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class SlskdService {
@@ -29,50 +36,98 @@ public class SlskdService {
 
     // Package-private constants, may be used in tests
     static final int SEARCH_POOL_SIZE = 5;
-    static final int MAX_CONCURRENT_ACTIVE_DOWNLOADS = 30;
+    // The download concurrency limit starts here, and then adapts to the measured throughput
+    static final int INITIAL_CONCURRENT_ACTIVE_DOWNLOADS = 30;
     static final int MAX_RETRIES = 10;
+    // Subscriptions are called whenever their transfers change, and at least this often (in polls) regardless
+    static final int SUBSCRIPTION_HEARTBEAT_POLLS = 10;
+    // How often to poll the downloads from subscribed users
+    static final long POLL_INTERVAL_MILLIS = 1000;
+    // How often to fetch every download, rather than just those from subscribed users
+    static final long FULL_SWEEP_INTERVAL_MILLIS = 15000;
+    static final long USER_POLL_TIMEOUT_MILLIS = 5000;
+    static final Duration DEFAULT_SEARCH_CACHE_TTL = Duration.ofHours(24);
+    // Identical searches made within this long of each other share one result
+    static final Duration SEARCH_COALESCE_RETENTION = Duration.ofMinutes(10);
 
     private final SlskdClient client;
-
-    private final ExecutorService searchPool;
-    private final List<CompletableFuture<?>> searchQueue;
-    private final Map<String, SlskdSearchStateResponse> allSearchStates;
-
-    private final AtomicBoolean canDownload;
-    private final Object canDownloadLock = new Object();
+    // Pushes search updates as they happen, if enabled
+    @Nullable
+    private final SlskdEventClient events;
+    // Pushed updates for each search in progress
+    private final Map<UUID, BlockingQueue<SlskdSearchStateResponse>> searchUpdates;
+
+    private final SearchScheduler searchScheduler;
+    private final SearchResultCache searchCache;
+    private final SingleFlight<String, List<ProcessorInputUser>> searchFlights;
+
+    private final DownloadAdmission downloadAdmission;
+    private final DownloadConcurrencyController concurrencyController;
     private final ScheduledExecutorService downloadExecutor;
     private final ExecutorService virtualThreadExecutor;
 
-    private List<SlskdGetDownloadResponse> downloadsList;
+    private volatile List<SlskdGetDownloadResponse> downloadsList;
+    private final TransferStateStore transferState;
     private final Map<String, Integer> retryCounts;
+    // Held while applying the results of a poll or sweep, which run on separate schedules
+    private final Object pollLock = new Object();
 
-    private final Map<String, Set<DownloadSubscription>> subscriptions;
+    private final AtomicLong nextSubscriptionId;
+    private final Map<Long, DownloadSubscription> subscriptions;
+    // Username -> filename -> id of the subscription for that file, so that the download poll
+    // can find the subscription for each transfer with a lookup. Guarded by 'subscriptions' for writes.
+    private final Map<String, Map<String, Long>> subscriptionIndex;
+    // New subscriptions, which get sent the current state of their transfers on the next poll
+    private final Queue<Long> unprimedSubscriptions;
 
     public SlskdService(SlskdClient client) {
+        this(client,
+                new SearchScheduler(SEARCH_POOL_SIZE,
+                        SearchScheduler.DEFAULT_MIN_SPACING_MILLIS, SearchScheduler.DEFAULT_SEARCHES_PER_SECOND),
+                SearchResultCache.inMemory(DEFAULT_SEARCH_CACHE_TTL));
+    }
+
+    public SlskdService(SlskdClient client, SearchScheduler searchScheduler, SearchResultCache searchCache) {
+        this(client, searchScheduler, searchCache, null);
+    }
+
+    public SlskdService(SlskdClient client, SearchScheduler searchScheduler, SearchResultCache searchCache,
+                        @Nullable SlskdEventClient events) {
 
         this.client = client;
-        this.searchPool = Executors.newFixedThreadPool(SEARCH_POOL_SIZE);
-        this.searchQueue = new ArrayList<>(SEARCH_POOL_SIZE);
-        this.allSearchStates = client.getAllSearchStates()
-                .stream()
-                .filter(ssr -> false)
-                .collect(Collectors.toMap(
-                        SlskdSearchStateResponse::searchText,
-                        Function.identity(),
-                        // Searches are returned earliest -> latest, so use the freshest
-                        // result only
-                        (o1, o2) -> o2
-                ));
-        this.canDownload = new AtomicBoolean(true);
+        this.events = events;
+        this.searchUpdates = new ConcurrentHashMap<>();
+        if (events != null) {
+            events.addListener(state -> {
+                final BlockingQueue<SlskdSearchStateResponse> updates = searchUpdates.get(state.id());
+                if (updates != null) {
+                    updates.add(state);
+                }
+            });
+        }
+        this.searchScheduler = searchScheduler;
+        this.searchCache = searchCache;
+        this.searchFlights = new SingleFlight<>(SEARCH_COALESCE_RETENTION);
         this.downloadExecutor = new ScheduledThreadPoolExecutor(2);
         this.downloadsList = new ArrayList<>();
+        this.transferState = new TransferStateStore();
         this.retryCounts = new ConcurrentHashMap<>();
         this.virtualThreadExecutor = ThreadPoolConfig.VIRTUAL_THREAD_EXECUTOR;
+        this.concurrencyController = new DownloadConcurrencyController(INITIAL_CONCURRENT_ACTIVE_DOWNLOADS);
+        this.downloadAdmission = new DownloadAdmission(concurrencyController.currentLimit(), virtualThreadExecutor);
+        this.nextSubscriptionId = new AtomicLong();
         this.subscriptions = new ConcurrentHashMap<>();
+        this.subscriptionIndex = new ConcurrentHashMap<>();
+        this.unprimedSubscriptions = new ConcurrentLinkedQueue<>();
     }
 
     public SlskdService(Config config) {
-        this(SlskdClient.create(config));
+        this(SlskdClient.create(config), config);
+    }
+
+    private SlskdService(SlskdClient client, Config config) {
+        this(client, SearchScheduler.from(config), SearchResultCache.from(config),
+                config.slskdRealtimeEvents() ? SlskdEventClient.create(config, client) : null);
     }
 
     private boolean startedDownloadPoll = false;
@@ -88,34 +143,32 @@ public class SlskdService {
 
             log.info("Beginning scheduled retry");
 
-            synchronized (canDownloadLock) {
-                this.downloadsList.stream()
-                        .flatMap(dr -> dr.directories().stream()
-                                .flatMap(d -> d.files().stream())
-                                .filter(f -> "Completed, Errored".equals(f.state()))
-                                .map(f -> new UserAndFile(dr.username(), f)))
-                        .collect(Collectors.groupingBy(UserAndFile::username))
-                        .forEach((u, fs) -> {
-
-                            final List<SlskdDownloadRequest> toRetry = new ArrayList<>();
-
-                            for (var fd: fs) {
-                                final int retryCount = retryCounts.computeIfAbsent(fd.asKey(), k -> 0);
-                                if (retryCount <= MAX_RETRIES) {
-                                    toRetry.add(new SlskdDownloadRequest(fd.file().filename(), fd.file().size()));
-                                    retryCounts.put(fd.asKey(), retryCount + 1);
-                                } else {
-                                    log.info("Skipping {} from user {} because it exceeded the retry limit",
-                                            fd.file().filename(), fd.username());
-                                }
+            this.downloadsList.stream()
+                    .flatMap(dr -> dr.directories().stream()
+                            .flatMap(d -> d.files().stream())
+                            .filter(f -> "Completed, Errored".equals(f.state()))
+                            .map(f -> new UserAndFile(dr.username(), f)))
+                    .collect(Collectors.groupingBy(UserAndFile::username))
+                    .forEach((u, fs) -> {
+
+                        final List<SlskdDownloadRequest> toRetry = new ArrayList<>();
+
+                        for (var fd: fs) {
+                            final int retryCount = retryCounts.computeIfAbsent(fd.asKey(), k -> 0);
+                            if (retryCount <= MAX_RETRIES) {
+                                toRetry.add(new SlskdDownloadRequest(fd.file().filename(), fd.file().size()));
+                                retryCounts.put(fd.asKey(), retryCount + 1);
+                            } else {
+                                log.info("Skipping {} from user {} because it exceeded the retry limit",
+                                        fd.file().filename(), fd.username());
                             }
+                        }
 
-                            // Just dispatch the request, don't bother waiting for it.
-                            // But we do want to time it out before the next execution of this func.
-                            CompletableFuture.runAsync(() -> client.initiateDownloads(u, toRetry), virtualThreadExecutor)
-                                    .orTimeout(30000, TimeUnit.MILLISECONDS);
-                        });
-            }
+                        // Just dispatch the request, don't bother waiting for it.
+                        // But we do want to time it out before the next execution of this func.
+                        CompletableFuture.runAsync(() -> client.initiateDownloads(u, toRetry), virtualThreadExecutor)
+                                .orTimeout(30000, TimeUnit.MILLISECONDS);
+                    });
         };
         if (runImmediately) {
             retryDownloads.run();
@@ -128,70 +181,160 @@ public class SlskdService {
 
     @CanIgnoreReturnValue
     public SlskdService startDownloadPoll() {
+        return startDownloadPoll(FULL_SWEEP_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Like {@link #startDownloadPoll()}, but with the given time between full sweeps. May be used in tests.
+     */
+    @CanIgnoreReturnValue
+    SlskdService startDownloadPoll(final long fullSweepIntervalMillis) {
         if (startedDownloadPoll) {
             return this;
         }
         startedDownloadPoll = true;
 
-        Runnable checkCanDownload = () -> {
-            synchronized (canDownloadLock) {
-                final boolean oldValue = canDownload.get();
-                // Impose a maximum of 30 concurrent downloads from different users. This arbitrary number
-                // is picked as a good candidate for saturating the connection.
-                this.downloadsList = client.getAllDownloads();
-                final boolean newValue = downloadsList
-                        .stream().filter(r -> r.directories().stream()
-                                .anyMatch(d -> d.files().stream()
-                                        .anyMatch(f -> f.state().contains("InProgress"))))
-                        .toList()
-                        .size() < MAX_CONCURRENT_ACTIVE_DOWNLOADS;
-                canDownload.set(newValue);
-                // If the value transitioned from false to true, wakeup the waiters
-                if (!oldValue && newValue) {
-                    canDownloadLock.notifyAll();
-                }
+        // Run them once inline, blocking the calling thread, to initialise the free download slots properly
+        sweepAllDownloads();
+        pollSubscribedUsers();
+        // Run all other invocations on the executor. Fetching every download gets expensive as slskd's transfer
+        // history grows, so that's only done every so often, to count the users being downloaded from outside
+        // our subscriptions. The users we're subscribed to are polled much more often.
+        downloadExecutor.scheduleAtFixedRate(this::sweepAllDownloads,
+                fullSweepIntervalMillis, fullSweepIntervalMillis, TimeUnit.MILLISECONDS);
+        downloadExecutor.scheduleAtFixedRate(this::pollSubscribedUsers,
+                POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Fetches every download, to find out which users are being downloaded from, and hands out any slots that
+     * frees up. Run by the full sweep, may be used in tests.
+     */
+    void sweepAllDownloads() {
+
+        final List<SlskdGetDownloadResponse> allDownloads;
+        try {
+            allDownloads = client.getAllDownloads();
+        } catch (Exception e) {
+            // Keep what the last sweep found, and try again next time
+            log.warn("Error getting all downloads", e);
+            return;
+        }
+        synchronized (pollLock) {
+            this.downloadsList = allDownloads;
+            transferState.onSweep(allDownloads);
+            downloadAdmission.update(transferState.activeUserCount(), concurrencyController.currentLimit());
+        }
+    }
+
+    /**
+     * Fetches the downloads from each subscribed user, and sends the changes to their subscriptions.
+     * Run by the download poll, may be used in tests.
+     */
+    void pollSubscribedUsers() {
+
+        final Set<String> users = Set.copyOf(subscriptionIndex.keySet());
+        final Map<String, Optional<SlskdGetDownloadResponse>> fetched = fetchDownloadsFrom(users);
+        final List<SlskdGetDownloadResponse> downloads = fetched.values().stream().flatMap(Optional::stream).toList();
+        synchronized (pollLock) {
+            transferState.retain(users);
+            final List<TransferChange> changes = transferState.update(fetched.keySet(), downloads);
+
+            // Limit the number of different users being downloaded from at once. The controller
+            // adjusts the limit to whatever gets the most out of the connection.
+            final int activeUsers = transferState.activeUserCount();
+            final Set<String> unfetched = new HashSet<>(users);
+            unfetched.removeAll(fetched.keySet());
+            concurrencyController.observe(downloads, unfetched, activeUsers, System.currentTimeMillis());
+            // Hands out any free slots to those waiting for one
+            downloadAdmission.update(activeUsers, concurrencyController.currentLimit());
+
+            dispatchToSubscribers(changes, pollCount++ % SUBSCRIPTION_HEARTBEAT_POLLS == 0);
+        }
+    }
+
+    /**
+     * Fetches the downloads from each of {@code users} concurrently.
+     *
+     * @return the downloads for each user that could be fetched, leaving out those whose request failed
+     */
+    private Map<String, Optional<SlskdGetDownloadResponse>> fetchDownloadsFrom(final Set<String> users) {
+
+        final Map<String, CompletableFuture<Optional<SlskdGetDownloadResponse>>> requests = new HashMap<>();
+        users.forEach(u -> requests.put(u, client.getDownloadsFromUserAsync(u)
+                .orTimeout(USER_POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)));
+
+        final Map<String, Optional<SlskdGetDownloadResponse>> fetched = new HashMap<>();
+        requests.forEach((u, req) -> {
+            try {
+                fetched.put(u, req.join());
+            } catch (CompletionException e) {
+                // Keep what we knew about this user, and try again next time
+                log.warn("Error getting downloads from user {}", u, e.getCause());
             }
+        });
+        return fetched;
+    }
 
-            if (pollCount++ % 10 != 0) {
-                return;
+    /**
+     * Applies the latest downloads from the users in {@code downloads} and sends the resulting changes to
+     * subscribers, as the download poll does. May be used in tests.
+     */
+    void onDownloads(final List<SlskdGetDownloadResponse> downloads, final boolean heartbeat) {
+
+        final List<String> users = downloads.stream().map(SlskdGetDownloadResponse::username).toList();
+        dispatchToSubscribers(transferState.update(users, downloads), heartbeat);
+    }
+
+    /**
+     * Sends each subscription the changes to its transfers, in a single pass over the changes. New subscriptions
+     * are sent the current state of all their transfers instead. On a heartbeat, every subscription is called,
+     * even if nothing changed.
+     */
+    private void dispatchToSubscribers(final List<TransferChange> changes, final boolean heartbeat) {
+
+        final Map<Long, List<TransferChange>> changesBySubscription = new HashMap<>();
+        for (var change : changes) {
+            final Map<String, Long> userIndex = subscriptionIndex.get(change.username());
+            if (userIndex == null) {
+                continue;
+            }
+            final Long id = userIndex.get(change.filename());
+            if (id != null) {
+                changesBySubscription.computeIfAbsent(id, k -> new ArrayList<>()).add(change);
+            }
+        }
+        Long unprimed;
+        while ((unprimed = unprimedSubscriptions.poll()) != null) {
+            final DownloadSubscription sub = subscriptions.get(unprimed);
+            if (sub == null) {
+                continue;
             }
-            Set<DownloadSubscription> allSubs = subscriptions.values().stream().flatMap(Collection::stream).collect(Collectors.toSet());
-            downloadsList.forEach(gdr -> {
-                var subs = subscriptions.get(gdr.username());
-                if (subs == null || subs.isEmpty()) {
-                    return;
+            // The snapshot is already up-to-date, so this replaces any changes from this poll
+            changesBySubscription.put(sub.id(), transferState.transfersFrom(sub.username()).stream()
+                    .filter(f -> sub.filenames().contains(f.filename()))
+                    .map(f -> TransferChange.added(sub.username(), f))
+                    .toList());
+        }
+
+        if (heartbeat) {
+            subscriptions.values().forEach(sub -> notify(sub, changesBySubscription.getOrDefault(sub.id(), List.of())));
+        } else {
+            changesBySubscription.forEach((id, subChanges) -> {
+                final DownloadSubscription sub = subscriptions.get(id);
+                if (sub != null) {
+                    notify(sub, subChanges);
                 }
-                // Remove subs that are getting called with actual args
-                allSubs.removeAll(subs);
-                Map<DownloadSubscription, List<SlskdDownloadFileResponse>> subArgs = subs.stream()
-                        .collect(Collectors.toMap(
-                                Function.identity(),
-                                f -> new ArrayList<>()
-                        ));
-                gdr.directories().stream()
-                        .flatMap(d -> d.files().stream())
-                        .forEach(dfr -> {
-                            boolean found = false;
-                            var it = subs.iterator();
-                            while (!found && it.hasNext()) {
-                                var sub = it.next();
-                                if (sub.filenames().contains(dfr.filename())) {
-                                    subArgs.get(sub).add(dfr);
-                                    found = true;
-                                }
-                            }
-                        });
-                subArgs.forEach((sub, args) -> CompletableFuture.runAsync(() -> sub.callback().accept(args, gdr), virtualThreadExecutor));
             });
-            // Call the remaining ones with empty params
-            allSubs.forEach((sub) -> CompletableFuture.runAsync(() -> sub.callback().accept(List.of(),
-                    new SlskdGetDownloadResponse("unknown", List.of())), virtualThreadExecutor));
-        };
-        // Run it once inline, blocking the calling thread, to initialise 'can download' properly
-        checkCanDownload.run();
-        // Run all other invocations on the executor
-        downloadExecutor.scheduleAtFixedRate(checkCanDownload, 1000, 1000, TimeUnit.MILLISECONDS);
-        return this;
+        }
+    }
+
+    private void notify(final DownloadSubscription sub, final List<TransferChange> subChanges) {
+
+        final boolean userActive = transferState.hasActiveTransfers(sub.username());
+        // Changes only make sense in order, so each subscription's callbacks are run one after the other
+        sub.enqueue(() -> sub.listener().onUpdate(subChanges, userActive), virtualThreadExecutor);
     }
 
     /**
@@ -200,95 +343,253 @@ public class SlskdService {
      */
     public SlskdService start() {
 
+        if (events != null) {
+            events.start();
+        }
         startDownloadPoll();
 //        startRetrier(false);
         return this;
     }
 
-    public CompletableFuture<List<SlskdSearchDetailResponse>> search(final AlbumInfo albumInfo) {
+    /**
+     * Receives search responses while the search is still running.
+     */
+    @FunctionalInterface
+    public interface SearchListener {
+
+        /**
+         * @param newResponses responses from users that weren't included in any previous call
+         * @return true once enough good results have been seen that the search can be stopped early
+         */
+        boolean onResponses(List<ProcessorInputUser> newResponses);
+    }
+
+    public CompletableFuture<List<ProcessorInputUser>> search(final AlbumInfo albumInfo) {
 
-        return search(albumInfo.searchString());
+        return search(albumInfo.searchString(), null);
     }
 
-    public CompletableFuture<List<SlskdSearchDetailResponse>> search(final String searchString) {
+    public CompletableFuture<List<ProcessorInputUser>> search(final AlbumInfo albumInfo, final SearchListener listener) {
 
-        // Wait for the download limit
-        ensureCanDownload();
+        return search(albumInfo.searchString(), listener);
+    }
 
-        // Once we've submitted the task limit, wait for everything to complete, then
-        // wait an additional five seconds to reduce load on the network
-        if (searchQueue.size() == SEARCH_POOL_SIZE) {
-            CompletableFuture.allOf(searchQueue.toArray(CompletableFuture[]::new)).join();
-            FutureUtils.sleep(5000);
-            searchQueue.clear();
-        }
+    public CompletableFuture<List<ProcessorInputUser>> search(final String searchString) {
 
-        final var future = CompletableFuture.supplyAsync(() -> {
-            // If there's already an exact match for this search string, don't execute the search
-            // again. This is useful mostly for development and could probably be removed once
-            // the program is more stable.
-            final SlskdSearchStateResponse initResp;
-            if (allSearchStates.containsKey(searchString)) {
-                log.info("Found existing search for string {}", searchString);
-                initResp = allSearchStates.get(searchString);
-            } else {
-                log.info("Creating new search for {}", searchString);
-                initResp = client.search(searchString);
-            }
+        return search(searchString, null);
+    }
+
+    /**
+     * Searches for the given string, or joins an identical search that's in progress or finished recently.
+     * The listener is only called if this call actually starts the search. A failed search gives no responses.
+     */
+    public CompletableFuture<List<ProcessorInputUser>> search(final String searchString, @Nullable final SearchListener listener) {
+
+        // Failures are only turned into empty results here, so that the flight forgets them and the next
+        // identical search tries again
+        return searchFlights.run(SearchResultCache.normalize(searchString), () -> doSearch(searchString, listener))
+                .exceptionally(t -> {
+                    log.error("Exception while retrieving search for {}", searchString, t);
+                    return List.of();
+                });
+    }
 
-            // Poll the server every second until we get a 'Completed' state. After 45 polls,
-            // give up on the request.
-            int pollCount = 0;
-            String state = initResp.state();
-            while (!state.contains("Completed")) {
-                if (pollCount++ > 45) {
-                    throw new RuntimeException(STR."Timed out search \"\{searchString}\" after 45 seconds");
+    private CompletableFuture<List<ProcessorInputUser>> doSearch(final String searchString, @Nullable final SearchListener listener) {
+
+        // Don't search the network again for something that was searched recently
+        final Optional<List<SlskdSearchDetailResponse>> cached = searchCache.get(searchString);
+        if (cached.isPresent()) {
+            log.info("Using cached responses for query {} ({} cache hits, {} misses)",
+                    searchString, searchCache.hits(), searchCache.misses());
+            final SearchStringTable strings = new SearchStringTable();
+            return CompletableFuture.completedFuture(cached.get().stream()
+                    .map(r -> ProcessorInputUser.convert(r, strings))
+                    .toList());
+        }
+
+        // The scheduler keeps a fixed number of searches in flight and spaces out their
+        // submission to reduce load on the network
+        return searchScheduler.submit(() -> {
+            log.info("Creating new search for {}", searchString);
+            final SlskdSearchStateResponse initResp = client.search(searchString);
+
+            // Watch the search until the responses stop coming in, backing off while nothing changes.
+            final SearchCompletionDetector detector = new SearchCompletionDetector();
+            final Set<String> seenUsers = new HashSet<>();
+            final BlockingQueue<SlskdSearchStateResponse> updates = new LinkedBlockingQueue<>();
+            searchUpdates.put(initResp.id(), updates);
+            SlskdSearchStateResponse currState = initResp;
+            // Responses already fetched mid-search, which later fetches don't decode again
+            int responsesFetched = 0;
+            long lastFetchMillis = 0;
+            boolean unfetchedResponses = false;
+            try {
+                while (detector.observe(currState) == Outcome.PENDING) {
+                    unfetchedResponses |= detector.grewOnLastPoll();
+                    // Only fetch the responses mid-search if someone is listening and there's something new to see.
+                    // Pushed updates can arrive several times a second, so fetch at most once per poll interval.
+                    final long now = System.currentTimeMillis();
+                    if (listener != null && unfetchedResponses && detector.responseCount() > 0
+                            && now - lastFetchMillis >= detector.nextPollDelayMillis()) {
+                        final SearchResponseDecoder.Decoded fetched = client.getSearchInputs(initResp.id(), responsesFetched);
+                        responsesFetched = fetched.responseCount();
+                        lastFetchMillis = now;
+                        unfetchedResponses = false;
+                        final List<ProcessorInputUser> newResponses = fetched.users().stream()
+                                .filter(r -> seenUsers.add(r.originalData().username()))
+                                .toList();
+                        if (!newResponses.isEmpty() && listener.onResponses(newResponses)) {
+                            detector.enoughMatches();
+                            break;
+                        }
+                    }
+                    currState = nextSearchState(initResp.id(), updates, detector.nextPollDelayMillis());
                 }
-                FutureUtils.sleep(1000);
-                final var currState = client.getSearchState(initResp.id());
-                state = currState.state();
+            } finally {
+                searchUpdates.remove(initResp.id());
+            }
+            if (detector.outcome() != Outcome.COMPLETED) {
+                // Also stop the search on the slskd side, so it doesn't keep using network resources
+                client.stopSearch(initResp.id());
+            }
+            if (detector.outcome() == Outcome.TIMED_OUT) {
+                log.warn("Search \"{}\" timed out after {} polls, using the responses received so far",
+                        searchString, detector.polls());
             }
 
-            var responses = client.getSearchResponses(initResp.id());
+            final List<ProcessorInputUser> responses = client.getSearchInputs(initResp.id());
+            // A search that ran out of time or was stopped once it had enough only has some of the responses, so
+            // it isn't worth keeping for the whole TTL. One that plateaued has all it was going to get.
+            // Only the files that were kept are cached, which are regrouped if the cached copy is used.
+            if (detector.outcome() == Outcome.COMPLETED || detector.outcome() == Outcome.PLATEAUED) {
+                searchCache.put(searchString, responses.stream().map(ProcessorInputUser::toResponse).toList());
+            }
 
-            log.info("Got {} responses for query {}", responses.size(), searchString);
+            final SearchScheduler.Stats stats = searchScheduler.stats();
+            log.info("Got {} responses for query {} after {} polls ({}) ({} searches queued, {} in flight, average wait {}ms)",
+                    responses.size(), searchString, detector.polls(), detector.outcome(),
+                    stats.queueDepth(), stats.inFlight(), stats.averageWait().toMillis());
 
             return responses;
-        }, this.searchPool)
-        .exceptionally(t -> {
-            log.error("Exception while retrieving search for {}", searchString, t);
-            return List.of();
         });
+    }
 
-        searchQueue.add(future);
+    /**
+     * Waits for the next state of a search. Pushed updates are used as soon as they arrive. Without any,
+     * either because nothing is happening or the event stream is down, the search is polled instead.
+     */
+    private SlskdSearchStateResponse nextSearchState(final UUID id, final BlockingQueue<SlskdSearchStateResponse> updates,
+                                                     final long waitMillis) {
 
-        return future;
+        if (events == null || !events.isConnected()) {
+            FutureUtils.sleep(waitMillis);
+            return client.getSearchState(id);
+        }
+        SlskdSearchStateResponse latest;
+        try {
+            latest = updates.poll(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if (latest == null) {
+            return client.getSearchState(id);
+        }
+        // Skip straight to the most recent if several have built up
+        SlskdSearchStateResponse next;
+        while ((next = updates.poll()) != null) {
+            latest = next;
+        }
+        return latest;
     }
 
-    private void ensureCanDownload() {
+    public SearchScheduler.Stats searchStats() {
 
-        synchronized (canDownloadLock) {
-            while (!canDownload.get()) {
-                try {
-                    canDownloadLock.wait();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
+        return searchScheduler.stats();
+    }
+
+    /**
+     * @return the number of searches that were served by an identical in-flight or recent search
+     */
+    public long coalescedSearches() {
+
+        return searchFlights.absorbed();
+    }
+
+    public int downloadConcurrencyLimit() {
+
+        return concurrencyController.currentLimit();
+    }
+
+    public double measuredDownloadBytesPerSecond() {
+
+        return concurrencyController.measuredBytesPerSecond();
+    }
+
+    /**
+     * Asks for permission to start a download, without blocking. The returned future completes once
+     * the download poll has seen that fewer than the maximum number of users are being downloaded from.
+     */
+    public CompletableFuture<Void> acquireDownloadSlot() {
+
+        return downloadAdmission.acquire();
+    }
+
+    /**
+     * Receives changes to the transfers of a download subscription.
+     */
+    @FunctionalInterface
+    public interface TransferListener {
+
+        /**
+         * @param changes the transfers that changed since the last call, or all of them on the first call.
+         *                Empty on a heartbeat where nothing changed.
+         * @param userHasActiveTransfers whether anything at all is currently being downloaded from the user
+         */
+        void onUpdate(List<TransferChange> changes, boolean userHasActiveTransfers);
+    }
+
+    /**
+     * Starts the given downloads once a download slot is free, and then has {@code onUpdate} called with changes
+     * to their state until {@link #unsubscribe(Subscription)} is called with the handle the returned future completes with.
+     */
+    public CompletableFuture<Subscription> initiateAndSubscribe(final String hostUser, final List<SlskdDownloadRequest> files,
+                                                                final TransferListener onUpdate) {
+        // Only subscribe once the downloads have been initiated, so the first update already includes them
+        return initiateDownloads(hostUser, files).thenApply(__ -> subscribe(hostUser, files, onUpdate));
+    }
+
+    public Subscription subscribe(final String hostUser, final List<SlskdDownloadRequest> files, final TransferListener onUpdate) {
+
+        final long id = nextSubscriptionId.incrementAndGet();
+        final Set<String> filenames = files.stream().map(SlskdDownloadRequest::filename).collect(Collectors.toSet());
+        synchronized (subscriptions) {
+            subscriptions.put(id, new DownloadSubscription(id, hostUser, filenames, onUpdate));
+            final Map<String, Long> userIndex = subscriptionIndex.computeIfAbsent(hostUser, k -> new ConcurrentHashMap<>());
+            filenames.forEach(f -> userIndex.put(f, id));
         }
+        unprimedSubscriptions.add(id);
+        return new Subscription(id);
     }
 
-    public void initiateAndSubscribe(final String hostUser, final List<SlskdDownloadRequest> files, BiConsumer<List<SlskdDownloadFileResponse>, SlskdGetDownloadResponse> onUpdate) {
-        // Wait for the download to be initiated before we subscribe, because initiateDownloads might block
-        initiateDownloads(hostUser, files);
-        subscriptions.computeIfAbsent(hostUser, k -> ConcurrentHashMap.newKeySet())
-                .add(new DownloadSubscription(files.stream().map(SlskdDownloadRequest::filename).collect(Collectors.toSet()), onUpdate));
+    public void unsubscribe(final Subscription subscription) {
+
+        synchronized (subscriptions) {
+            final DownloadSubscription sub = subscriptions.remove(subscription.id());
+            if (sub == null) {
+                return;
+            }
+            final Map<String, Long> userIndex = subscriptionIndex.get(sub.username());
+            // Only remove the entries that still point at this subscription, a newer one may have taken them over
+            sub.filenames().forEach(f -> userIndex.remove(f, sub.id()));
+            if (userIndex.isEmpty()) {
+                subscriptionIndex.remove(sub.username());
+            }
+        }
     }
 
-    public void unsubscribe(final String hostUser, final List<SlskdDownloadRequest> files, BiConsumer<List<SlskdDownloadFileResponse>, SlskdGetDownloadResponse> onUpdate) {
+    public int subscriptionCount() {
 
-        subscriptions.computeIfAbsent(hostUser, k -> ConcurrentHashMap.newKeySet())
-                .remove(new DownloadSubscription(files.stream().map(SlskdDownloadRequest::filename).collect(Collectors.toSet()), onUpdate));
+        return subscriptions.size();
     }
 
     public void cancelDownloads(final String hostUser, final List<UUID> fileIds, boolean remove) {
@@ -296,24 +597,32 @@ public class SlskdService {
         fileIds.forEach(id -> client.cancelDownload(hostUser, id, remove));
     }
 
-    public boolean initiateDownloads(final String hostUser, final List<SlskdDownloadRequest> files) {
-        ensureCanDownload();
-
-        try {
-            client.initiateDownloads(hostUser, files);
-            return true;
-        } catch (Exception e) {
-            log.error("Error starting download request from user {} for {}", hostUser, files, e);
-            return false;
-        }
+    /**
+     * Starts the given downloads once a download slot is free, without blocking the calling thread.
+     *
+     * @return a future completing with whether the downloads were started
+     */
+    public CompletableFuture<Boolean> initiateDownloads(final String hostUser, final List<SlskdDownloadRequest> files) {
+
+        return acquireDownloadSlot().thenApplyAsync(__ -> {
+            try {
+                client.initiateDownloads(hostUser, files);
+                return true;
+            } catch (Exception e) {
+                log.error("Error starting download request from user {} for {}", hostUser, files, e);
+                return false;
+            }
+        }, virtualThreadExecutor);
     }
 
     public void shutdown() {
-        this.searchPool.shutdownNow();
+        this.searchScheduler.shutdown();
+        if (this.events != null) {
+            this.events.close();
+        }
         this.downloadExecutor.shutdownNow();
         this.virtualThreadExecutor.shutdownNow();
         try {
-            this.searchPool.awaitTermination(15000, TimeUnit.MILLISECONDS);
             this.downloadExecutor.awaitTermination(15000, TimeUnit.MILLISECONDS);
             this.virtualThreadExecutor.awaitTermination(15000, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
@@ -322,5 +631,49 @@ public class SlskdService {
         }
     }
 
-    private record DownloadSubscription(Set<String> filenames, BiConsumer<List<SlskdDownloadFileResponse>, SlskdGetDownloadResponse> callback) { }
+    /**
+     * Handle for a download subscription, used to unsubscribe.
+     */
+    public record Subscription(long id) { }
+
+    private static final class DownloadSubscription {
+        private final long id;
+        private final String username;
+        private final Set<String> filenames;
+        private final TransferListener listener;
+        // The last callback queued for this subscription. Only touched by the poll thread.
+        private CompletableFuture<Void> tail;
+
+        private DownloadSubscription(long id, String username, Set<String> filenames, TransferListener listener) {
+            this.id = id;
+            this.username = username;
+            this.filenames = filenames;
+            this.listener = listener;
+            this.tail = CompletableFuture.completedFuture(null);
+        }
+
+        private long id() {
+            return id;
+        }
+
+        private String username() {
+            return username;
+        }
+
+        private Set<String> filenames() {
+            return filenames;
+        }
+
+        private TransferListener listener() {
+            return listener;
+        }
+
+        private void enqueue(final Runnable callback, final Executor executor) {
+            // Carry on with the next callback even if this one throws
+            tail = tail.thenRunAsync(callback, executor).exceptionally(t -> {
+                log.error("Error in download subscription {} for user {}", id, username, t);
+                return null;
+            });
+        }
+    }
 }
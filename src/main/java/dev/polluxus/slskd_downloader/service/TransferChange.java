@@ -0,0 +1,64 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadFileResponse;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A change to a single transfer between two successive download polls.
+ *
+ * @param username the user the transfer is from
+ * @param previous the transfer as of the previous poll, or null if it's new
+ * @param current the transfer as of the latest poll, or null if it has been removed
+ */
+public record TransferChange(
+        String username,
+        @Nullable SlskdDownloadFileResponse previous,
+        @Nullable SlskdDownloadFileResponse current
+) {
+
+    public static TransferChange added(String username, SlskdDownloadFileResponse current) {
+        return new TransferChange(username, null, current);
+    }
+
+    public static TransferChange removed(String username, SlskdDownloadFileResponse previous) {
+        return new TransferChange(username, previous, null);
+    }
+
+    /**
+     * @return whether anything we care about differs between the two versions of a transfer
+     */
+    public static boolean differs(SlskdDownloadFileResponse previous, SlskdDownloadFileResponse current) {
+        return previous.bytesTransferred() != current.bytesTransferred()
+                || !Objects.equals(previous.state(), current.state());
+    }
+
+    public boolean isNew() {
+        return previous == null;
+    }
+
+    public boolean isRemoved() {
+        return current == null;
+    }
+
+    public UUID id() {
+        return current != null ? current.id() : previous.id();
+    }
+
+    public String filename() {
+        return current != null ? current.filename() : previous.filename();
+    }
+
+    public boolean stateChanged() {
+        return previous == null || current == null || !Objects.equals(previous.state(), current.state());
+    }
+
+    public long bytesProgressed() {
+        if (previous == null || current == null) {
+            return 0;
+        }
+        return current.bytesTransferred() - previous.bytesTransferred();
+    }
+}
@@ -0,0 +1,142 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadFileResponse;
+
+import java.util.*;
+
+/**
+ * Keeps the last known state of the transfers from the users we're polling, keyed by transfer id, and
+ * works out what changed when new state comes in. When nothing has happened between polls, the diff is
+ * just a lookup per transfer and produces no changes.
+ * <p>
+ * Only the users being polled individually are tracked in detail. For everyone else, all that's kept is
+ * whether they were active as of the last sweep of all downloads, which is enough to count active users.
+ */
+class TransferStateStore {
+
+    // All guarded by 'this'
+    private final Map<String, Map<UUID, SlskdDownloadFileResponse>> transfersByUser = new HashMap<>();
+    private final Map<String, SlskdGetDownloadResponse> byUser = new HashMap<>();
+    private final Set<String> activeUsers = new HashSet<>();
+    // Users with transfers in progress as of the last sweep, one entry per user in the sweep
+    private List<String> sweptActiveUsers = List.of();
+
+    /**
+     * Replaces the stored state of each of {@code users} with their downloads from {@code downloads}. A user
+     * without an entry in {@code downloads} has no transfers. Users not in {@code users} are left as they are.
+     *
+     * @return every transfer of those users that was added, removed, or changed state or progressed since
+     *         their last update
+     */
+    synchronized List<TransferChange> update(final Collection<String> users, final List<SlskdGetDownloadResponse> downloads) {
+
+        final Map<String, SlskdGetDownloadResponse> latest = new HashMap<>();
+        downloads.forEach(gdr -> latest.put(gdr.username(), gdr));
+
+        final List<TransferChange> changes = new ArrayList<>();
+        for (var user : users) {
+            final Map<UUID, SlskdDownloadFileResponse> previous = transfersByUser.getOrDefault(user, Map.of());
+            final Map<UUID, SlskdDownloadFileResponse> next = new HashMap<>();
+            final SlskdGetDownloadResponse gdr = latest.get(user);
+            boolean active = false;
+            if (gdr != null) {
+                for (var dir : gdr.directories()) {
+                    for (var file : dir.files()) {
+                        active |= isInProgress(file);
+                        if (file.id() == null) {
+                            continue;
+                        }
+                        next.put(file.id(), file);
+                        final SlskdDownloadFileResponse before = previous.get(file.id());
+                        if (before == null) {
+                            changes.add(TransferChange.added(user, file));
+                        } else if (TransferChange.differs(before, file)) {
+                            changes.add(new TransferChange(user, before, file));
+                        }
+                    }
+                }
+            }
+            // Whatever isn't in the new state has gone
+            previous.forEach((id, file) -> {
+                if (!next.containsKey(id)) {
+                    changes.add(TransferChange.removed(user, file));
+                }
+            });
+
+            transfersByUser.put(user, next);
+            if (gdr != null) {
+                byUser.put(user, gdr);
+            } else {
+                byUser.remove(user);
+            }
+            if (active) {
+                activeUsers.add(user);
+            } else {
+                activeUsers.remove(user);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Forgets everything about users that aren't in {@code users}, without producing any changes.
+     */
+    synchronized void retain(final Set<String> users) {
+
+        transfersByUser.keySet().retainAll(users);
+        byUser.keySet().retainAll(users);
+        activeUsers.retainAll(users);
+    }
+
+    /**
+     * Records which users are active, from a snapshot of every download.
+     */
+    synchronized void onSweep(final List<SlskdGetDownloadResponse> allDownloads) {
+
+        sweptActiveUsers = allDownloads.stream()
+                .filter(gdr -> gdr.directories().stream()
+                        .anyMatch(d -> d.files().stream().anyMatch(TransferStateStore::isInProgress)))
+                .map(SlskdGetDownloadResponse::username)
+                .toList();
+    }
+
+    /**
+     * @return the transfers from {@code username} as of their latest update
+     */
+    synchronized List<SlskdDownloadFileResponse> transfersFrom(final String username) {
+
+        final SlskdGetDownloadResponse gdr = byUser.get(username);
+        if (gdr == null) {
+            return List.of();
+        }
+        return gdr.directories().stream().flatMap(d -> d.files().stream()).toList();
+    }
+
+    synchronized boolean hasActiveTransfers(final String username) {
+
+        if (transfersByUser.containsKey(username)) {
+            return activeUsers.contains(username);
+        }
+        return sweptActiveUsers.contains(username);
+    }
+
+    /**
+     * @return the number of users with transfers in progress, using the latest state for the users being
+     *         tracked and the last sweep for everyone else
+     */
+    synchronized int activeUserCount() {
+
+        int count = activeUsers.size();
+        for (var user : sweptActiveUsers) {
+            if (!transfersByUser.containsKey(user)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isInProgress(final SlskdDownloadFileResponse file) {
+        return file.state() != null && file.state().contains("InProgress");
+    }
+}
@@ -92,4 +92,13 @@ public class FileBackedStore<T> implements Store<T> {
             // throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public void remove(final String key) {
+
+        final File data = Path.of(parentDir.getPath(), key + ".json").toFile();
+        if (data.exists() && !data.delete()) {
+            log.error("Error deleting file {}", data.getPath());
+        }
+    }
 }
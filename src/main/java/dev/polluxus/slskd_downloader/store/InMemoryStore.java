@@ -0,0 +1,29 @@
+package dev.polluxus.slskd_downloader.store;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryStore<T> implements Store<T> {
+
+    private final Map<String, T> data = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean has(String key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public T get(String key) {
+        return data.get(key);
+    }
+
+    @Override
+    public void put(String key, T value) {
+        data.put(key, value);
+    }
+
+    @Override
+    public void remove(String key) {
+        data.remove(key);
+    }
+}
@@ -0,0 +1,117 @@
+package dev.polluxus.slskd_downloader.store;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers the responses to previous searches, so that rerunning a wishlist doesn't search the
+ * network again for albums that were searched recently. Entries are keyed by the normalised search
+ * string and expire after a configurable time to live.
+ */
+public class SearchResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchResultCache.class);
+
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Leaves plenty of headroom under common file name length limits
+    private static final int MAX_KEY_LENGTH = 150;
+
+    public record CachedSearch(
+            // Unix millis
+            long storedAt,
+            List<SlskdSearchDetailResponse> responses
+    ) {}
+
+    private final Store<CachedSearch> store;
+    private final Duration ttl;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    public SearchResultCache(Store<CachedSearch> store, Duration ttl) {
+        this.store = store;
+        this.ttl = ttl;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    public static SearchResultCache from(Config config) {
+
+        return new SearchResultCache(FileBackedStore.from(config, CachedSearch.class),
+                Duration.ofMinutes(config.searchCacheTtlMinutes()));
+    }
+
+    public static SearchResultCache inMemory(Duration ttl) {
+
+        return new SearchResultCache(new InMemoryStore<>(), ttl);
+    }
+
+    /**
+     * Normalises a search string so that searches differing only in case, punctuation or spacing
+     * share the same entry. Soulseek doesn't distinguish between these either.
+     */
+    public static String normalize(final String searchString) {
+
+        final String folded = Normalizer.normalize(searchString, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return NON_ALPHANUMERIC.matcher(folded).replaceAll(" ").trim();
+    }
+
+    public Optional<List<SlskdSearchDetailResponse>> get(final String searchString) {
+
+        final String key = toKey(searchString);
+        final CachedSearch cached = store.get(key);
+        if (cached == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        if (System.currentTimeMillis() - cached.storedAt() > ttl.toMillis()) {
+            log.debug("Cached search for {} has expired", searchString);
+            store.remove(key);
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(cached.responses());
+    }
+
+    public void put(final String searchString, final List<SlskdSearchDetailResponse> responses) {
+
+        // Don't hold on to searches that found nothing, it's worth trying those again next time
+        if (responses.isEmpty()) {
+            invalidate(searchString);
+            return;
+        }
+        store.put(toKey(searchString), new CachedSearch(System.currentTimeMillis(), responses));
+    }
+
+    public void invalidate(final String searchString) {
+
+        store.remove(toKey(searchString));
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    private static String toKey(final String searchString) {
+
+        final String key = normalize(searchString).replace(' ', '_');
+        if (key.length() <= MAX_KEY_LENGTH) {
+            return key;
+        }
+        return STR."\{key.substring(0, MAX_KEY_LENGTH)}-\{Integer.toHexString(key.hashCode())}";
+    }
+}
@@ -7,4 +7,6 @@ public interface Store<T> {
     T get(String key);
 
     void put(String key, T value);
+
+    void remove(String key);
 }
@@ -0,0 +1,201 @@
+package dev.polluxus.slskd_downloader.util;
+
+import java.util.*;
+
+/**
+ * Finds occurrences of any of a set of literal strings in one pass over a text, however many strings there are.
+ * Optionally ignores case, for US-ASCII letters only, which is how a {@link java.util.regex.Pattern} compiled with
+ * just {@code CASE_INSENSITIVE} behaves. Empty strings are never reported.
+ */
+public final class AhoCorasick {
+
+    @FunctionalInterface
+    public interface MatchHandler {
+
+        /**
+         * @param pattern index of the string that occurs
+         * @param start where it starts in the text, inclusive
+         * @param end where it ends in the text, exclusive
+         * @return false to stop scanning
+         */
+        boolean onMatch(int pattern, int start, int end);
+    }
+
+    private static final int ROOT = 0;
+    private static final int[] NONE = new int[0];
+
+    private final boolean asciiCaseInsensitive;
+    private final int[] patternLengths;
+    // For each state, its outgoing characters (sorted) and the states they lead to
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] fail;
+    // The patterns ending at each state, including those ending at states reachable by failing
+    private final int[][] outputs;
+
+    private AhoCorasick(List<String> patterns, boolean asciiCaseInsensitive) {
+
+        this.asciiCaseInsensitive = asciiCaseInsensitive;
+        this.patternLengths = patterns.stream().mapToInt(String::length).toArray();
+
+        final List<Map<Character, Integer>> trie = new ArrayList<>();
+        final List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new HashMap<>());
+        ends.add(new ArrayList<>());
+        for (int p = 0; p < patterns.size(); p++) {
+            final String pattern = patterns.get(p);
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                final char c = fold(pattern.charAt(i));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<>());
+                    ends.add(new ArrayList<>());
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ends.get(state).add(p);
+        }
+
+        final int states = trie.size();
+        this.keys = new char[states][];
+        this.targets = new int[states][];
+        for (int s = 0; s < states; s++) {
+            final List<Map.Entry<Character, Integer>> entries = new ArrayList<>(trie.get(s).entrySet());
+            entries.sort(Map.Entry.comparingByKey());
+            keys[s] = new char[entries.size()];
+            targets[s] = new int[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                keys[s][i] = entries.get(i).getKey();
+                targets[s][i] = entries.get(i).getValue();
+            }
+        }
+
+        // Breadth first, so that a state's fail state is always done before it
+        this.fail = new int[states];
+        this.outputs = new int[states][];
+        outputs[ROOT] = NONE;
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            final int[] own = ends.get(state).stream().mapToInt(Integer::intValue).toArray();
+            final int[] inherited = outputs[fail[state]];
+            outputs[state] = inherited.length == 0 ? (own.length == 0 ? NONE : own) : concat(own, inherited);
+            for (int i = 0; i < keys[state].length; i++) {
+                final int child = targets[state][i];
+                int f = fail[state];
+                int next;
+                while ((next = step(f, keys[state][i])) < 0 && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[child] = next < 0 ? ROOT : next;
+                queue.add(child);
+            }
+        }
+    }
+
+    public static AhoCorasick of(List<String> patterns) {
+        return new AhoCorasick(patterns, false);
+    }
+
+    public static AhoCorasick asciiCaseInsensitive(List<String> patterns) {
+        return new AhoCorasick(patterns, true);
+    }
+
+    public int patternCount() {
+        return patternLengths.length;
+    }
+
+    /**
+     * Reports every occurrence within {@code text[from, to)}, in order of where they end.
+     */
+    public void scan(CharSequence text, int from, int to, MatchHandler handler) {
+
+        int state = ROOT;
+        for (int i = from; i < to; i++) {
+            final char c = fold(text.charAt(i));
+            int next;
+            while ((next = step(state, c)) < 0 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next < 0 ? ROOT : next;
+            for (int p : outputs[state]) {
+                if (!handler.onMatch(p, i + 1 - patternLengths[p], i + 1)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return for each pattern, whether it occurs anywhere in the text
+     */
+    public boolean[] occurring(CharSequence text) {
+
+        final boolean[] found = new boolean[patternLengths.length];
+        scan(text, 0, text.length(), (p, start, end) -> {
+            found[p] = true;
+            return true;
+        });
+        return found;
+    }
+
+    private int step(int state, char c) {
+
+        final int i = Arrays.binarySearch(keys[state], c);
+        return i < 0 ? -1 : targets[state][i];
+    }
+
+    private char fold(char c) {
+        return asciiCaseInsensitive ? Ascii.toLower(c) : c;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+
+        final int[] ret = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, ret, a.length, b.length);
+        return ret;
+    }
+
+    /**
+     * US-ASCII only case folding, matching {@link java.util.regex.Pattern#CASE_INSENSITIVE} without
+     * {@link java.util.regex.Pattern#UNICODE_CASE}.
+     */
+    public static final class Ascii {
+
+        private Ascii() {
+        }
+
+        public static char toLower(char c) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+
+        /**
+         * @return the index of the first occurrence of {@code needle} in {@code haystack} at or after
+         * {@code from}, ignoring the case of US-ASCII letters, or -1 if there isn't one
+         */
+        public static int indexOfIgnoreCase(CharSequence haystack, CharSequence needle, int from) {
+
+            final int n = needle.length();
+            outer:
+            for (int i = Math.max(from, 0); i + n <= haystack.length(); i++) {
+                for (int j = 0; j < n; j++) {
+                    if (toLower(haystack.charAt(i + j)) != toLower(needle.charAt(j))) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dev.polluxus.slskd_downloader.util;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tells audio files apart from everything else shared alongside them, like artwork, logs and cue sheets.
+ */
+public class AudioFiles {
+
+    public static final Set<String> AUDIO_EXTENSIONS = Set.of(
+            "flac", "mp3", "m4a", "aac", "alac", "ogg", "oga", "opus", "wav", "aif", "aiff", "ape", "wv", "wma",
+            "mpc", "dsf", "dff");
+
+    // slskd mostly leaves the extension field empty, so go by the file name instead
+    public static boolean isAudio(final String filename) {
+
+        final int index = FilenameUtils.indexOfExtension(filename);
+        return index >= 0 && AUDIO_EXTENSIONS.contains(filename.substring(index + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,120 @@
+package dev.polluxus.slskd_downloader.util;
+
+import org.apache.commons.text.similarity.LevenshteinDistance;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Levenshtein distance from a fixed pattern, giving up once it's certain to exceed a threshold. Gives the same
+ * results as commons-text's {@link LevenshteinDistance} with a threshold, but patterns of up to 64 characters
+ * (almost every track title) are compiled to bitmasks up front and compared a whole column at a time using
+ * Myers' bit-vector algorithm, so a comparison is one pass over the text with no allocation.
+ */
+public final class BoundedEditDistance {
+
+    // Package-private constants, may be used in tests
+    static final int MAX_BIT_PARALLEL_LENGTH = Long.SIZE;
+    // Characters below this get their masks from an array, the rest from a map
+    private static final int DIRECT_MASKS = 256;
+
+    private final String pattern;
+    private final int threshold;
+    // Bit i set in a character's mask if the pattern has that character at i. Null for long patterns.
+    private final long[] directMasks;
+    private final Map<Character, Long> otherMasks;
+    // Used instead for patterns too long to fit in a mask
+    private final LevenshteinDistance fallback;
+
+    private BoundedEditDistance(String pattern, int threshold) {
+        this.pattern = pattern;
+        this.threshold = threshold;
+        if (pattern.length() > MAX_BIT_PARALLEL_LENGTH) {
+            this.directMasks = null;
+            this.otherMasks = null;
+            this.fallback = new LevenshteinDistance(threshold);
+            return;
+        }
+        this.directMasks = new long[DIRECT_MASKS];
+        this.otherMasks = new HashMap<>();
+        this.fallback = null;
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c < DIRECT_MASKS) {
+                directMasks[c] |= 1L << i;
+            } else {
+                otherMasks.merge(c, 1L << i, (a, b) -> a | b);
+            }
+        }
+    }
+
+    public static BoundedEditDistance compile(String pattern, int threshold) {
+
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        return new BoundedEditDistance(pattern, threshold);
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the edit distance between the pattern and {@code text}, or -1 if it's greater than the threshold
+     */
+    public int apply(CharSequence text) {
+
+        if (fallback != null) {
+            return fallback.apply(pattern, text);
+        }
+        final int m = pattern.length();
+        final int n = text.length();
+        if (Math.abs(m - n) > threshold) {
+            return -1;
+        }
+        if (m == 0) {
+            return n;
+        }
+
+        final long last = 1L << (m - 1);
+        // Vertical deltas of the current column, as positive and negative bit vectors. The first column is 0..m.
+        long pv = m == Long.SIZE ? -1L : (1L << m) - 1;
+        long mv = 0;
+        int score = m;
+        for (int j = 0; j < n; j++) {
+            final long eq = mask(text.charAt(j));
+            final long xv = eq | mv;
+            final long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0) {
+                score++;
+            } else if ((mh & last) != 0) {
+                score--;
+            }
+            // The top row goes up by one each column, as the whole text so far has to be inserted
+            ph = (ph << 1) | 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            // Each remaining column can only bring the score down by one
+            if (score - (n - j - 1) > threshold) {
+                return -1;
+            }
+        }
+        return score <= threshold ? score : -1;
+    }
+
+    private long mask(char c) {
+
+        if (c < DIRECT_MASKS) {
+            return directMasks[c];
+        }
+        return otherMasks.isEmpty() ? 0 : otherMasks.getOrDefault(c, 0L);
+    }
+}
@@ -1,7 +1,5 @@
 package dev.polluxus.slskd_downloader.util;
 
-import org.apache.commons.text.similarity.LevenshteinDistance;
-
 import java.util.regex.Pattern;
 
 public class Matchers {
@@ -15,20 +13,35 @@ public class Matchers {
     public static final Pattern LEADING_GARBAGE = Pattern.compile("^(\s|\\.|-)*");
     public static final Pattern FEATURED_ARTIST_MATCHER = Pattern.compile("\\s*\\((feat|ft|featuring)[^(]+\\)");
 
-    public static final LevenshteinDistance LEVENSHTEIN_DISTANCE_1 = new LevenshteinDistance(1);
-    public static final LevenshteinDistance LEVENSHTEIN_DISTANCE_2 = new LevenshteinDistance(2);
-    public static final LevenshteinDistance LEVENSHTEIN_DISTANCE_4 = new LevenshteinDistance(4);
-    public static final LevenshteinDistance LEVENSHTEIN_DISTANCE_8 = new LevenshteinDistance(8);
-
-    public static LevenshteinDistance getEditDistanceFunc(final String name) {
+    /**
+     * @return how many edits a match for {@code name} is allowed, more for longer names
+     */
+    public static int editDistanceThreshold(final String name) {
 
         final int length = name.length();
         if (length <= 6) {
-            return LEVENSHTEIN_DISTANCE_1;
+            return 1;
         } else if (length <= 22) {
-            return LEVENSHTEIN_DISTANCE_4;
+            return 4;
         } else {
-            return LEVENSHTEIN_DISTANCE_8;
+            return 8;
         }
     }
+
+    /**
+     * Compiles {@code name} for comparing against many strings, allowing as many edits as
+     * {@link #editDistanceThreshold} does for it.
+     */
+    public static BoundedEditDistance getEditDistanceFunc(final String name) {
+
+        return BoundedEditDistance.compile(name, editDistanceThreshold(name));
+    }
+
+    /**
+     * @return the edit distance between the two strings, or -1 if it's over the threshold for {@code name}
+     */
+    public static int editDistance(final String name, final String other) {
+
+        return getEditDistanceFunc(name).apply(other);
+    }
 }
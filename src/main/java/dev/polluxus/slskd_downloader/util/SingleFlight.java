@@ -0,0 +1,99 @@
+package dev.polluxus.slskd_downloader.util;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical requests. While a request for a key is in flight, and for {@code retention}
+ * after it has completed successfully, every caller asking for the same key shares the same future
+ * rather than starting the work again. Failed requests are forgotten straight away so they can be retried.
+ */
+public class SingleFlight<K, V> {
+
+    // How many calls between sweeps of completed entries whose retention has run out
+    private static final int PURGE_INTERVAL = 64;
+
+    private static class Flight<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        // Unix millis, or -1 while still in flight
+        private volatile long completedAt = -1;
+
+        private boolean isExpired(long now, long retentionMillis) {
+            return completedAt != -1 && now - completedAt > retentionMillis;
+        }
+    }
+
+    private final ConcurrentMap<K, Flight<V>> flights;
+    private final long retentionMillis;
+    private final AtomicLong calls;
+    private final AtomicLong absorbed;
+
+    public SingleFlight(Duration retention) {
+        this(retention.toMillis());
+    }
+
+    private SingleFlight(long retentionMillis) {
+        this.flights = new ConcurrentHashMap<>();
+        this.retentionMillis = retentionMillis;
+        this.calls = new AtomicLong();
+        this.absorbed = new AtomicLong();
+    }
+
+    /**
+     * @return a SingleFlight that keeps successful results for as long as it exists, so that each key's
+     * work is only ever done once
+     */
+    public static <K, V> SingleFlight<K, V> retainingForever() {
+        return new SingleFlight<>(Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the future for an in-flight or recently completed request for {@code key} if there is one,
+     * otherwise starts a new request using {@code supplier}.
+     */
+    public CompletableFuture<V> run(final K key, final Supplier<CompletableFuture<V>> supplier) {
+
+        final long now = System.currentTimeMillis();
+        if (calls.incrementAndGet() % PURGE_INTERVAL == 0 && retentionMillis != Long.MAX_VALUE) {
+            flights.values().removeIf(f -> f.isExpired(now, retentionMillis));
+        }
+
+        final Flight<V> mine = new Flight<>();
+        final Flight<V> flight = flights.compute(key,
+                (k, existing) -> existing != null && !existing.isExpired(now, retentionMillis) ? existing : mine);
+        if (flight != mine) {
+            absorbed.incrementAndGet();
+            return flight.future;
+        }
+
+        final CompletableFuture<V> work;
+        try {
+            work = supplier.get();
+        } catch (RuntimeException e) {
+            flights.remove(key, mine);
+            mine.future.completeExceptionally(e);
+            return mine.future;
+        }
+        work.whenComplete((v, t) -> {
+            if (t != null) {
+                flights.remove(key, mine);
+                mine.future.completeExceptionally(t);
+            } else {
+                mine.completedAt = System.currentTimeMillis();
+                mine.future.complete(v);
+            }
+        });
+        return mine.future;
+    }
+
+    /**
+     * @return the number of calls that were served by an existing request instead of starting a new one
+     */
+    public long absorbed() {
+        return absorbed.get();
+    }
+}
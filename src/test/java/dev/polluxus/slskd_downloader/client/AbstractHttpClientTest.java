@@ -0,0 +1,88 @@
+package dev.polluxus.slskd_downloader.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.sun.net.httpserver.HttpServer;
+import dev.polluxus.slskd_downloader.config.HttpClientConfig;
+import dev.polluxus.slskd_downloader.config.JacksonConfig;
+import org.apache.hc.client5.http.async.HttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AbstractHttpClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private CloseableHttpAsyncClient asyncClient;
+
+    private static class TestClient extends AbstractHttpClient {
+
+        private TestClient(HttpAsyncClient asyncClient) {
+            super(HttpClientConfig.pooledClient(), asyncClient, JacksonConfig.MAPPER);
+        }
+    }
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/echo", exchange -> {
+            final byte[] body = exchange.getRequestBody().readAllBytes();
+            final String header = exchange.getRequestHeaders().getFirst("X-Test");
+            final byte[] resp = STR."{\"method\":\"\{exchange.getRequestMethod()}\",\"header\":\"\{header}\",\"body\":\{body.length == 0 ? "null" : new String(body, StandardCharsets.UTF_8)}}"
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, resp.length);
+            exchange.getResponseBody().write(resp);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = STR."http://localhost:\{server.getAddress().getPort()}";
+        asyncClient = HttpClientConfig.pooledAsyncClient();
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        asyncClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void test_asyncRequestsWithAndWithoutAsyncClient() {
+        for (TestClient client : List.of(new TestClient(asyncClient), new TestClient(null))) {
+            final var req = ClassicRequestBuilder.post(STR."\{baseUrl}/echo")
+                    .addHeader("X-Test", "present")
+                    .setEntity("[1,2,3]", ContentType.APPLICATION_JSON)
+                    .build();
+            final Map<String, Object> resp = client.doRequestAsync(req, new TypeReference<Map<String, Object>>() {})
+                    .orTimeout(5, TimeUnit.SECONDS).join();
+
+            assertEquals("POST", resp.get("method"));
+            assertEquals("present", resp.get("header"));
+            assertEquals(List.of(1, 2, 3), resp.get("body"));
+
+            final CompletableFuture<Void> missing = client.doRequestAsync(
+                    ClassicRequestBuilder.get(STR."\{baseUrl}/missing").build(), Void.class);
+            final CompletionException e = assertThrows(CompletionException.class, () -> missing.orTimeout(5, TimeUnit.SECONDS).join());
+            assertInstanceOf(HttpStatusException.class, e.getCause());
+            assertEquals(404, ((HttpStatusException) e.getCause()).statusCode());
+        }
+    }
+}
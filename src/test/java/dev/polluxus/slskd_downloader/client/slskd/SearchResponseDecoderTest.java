@@ -0,0 +1,142 @@
+package dev.polluxus.slskd_downloader.client.slskd;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
+import dev.polluxus.slskd_downloader.config.JacksonConfig;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputDirectory;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.processor.model.input.SearchStringTable;
+import dev.polluxus.slskd_downloader.util.AudioFiles;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchResponseDecoderTest {
+
+    private final SearchResponseDecoder decoder = new SearchResponseDecoder(JacksonConfig.MAPPER);
+
+    @Test
+    public void test_matchesFullParseWithFilesFiltered() throws IOException {
+
+        final List<SlskdSearchDetailResponse> full;
+        try (InputStream in = getClass().getResourceAsStream("/slskd-processor-test-response-1.json")) {
+            full = JacksonConfig.MAPPER.readValue(in, new TypeReference<>() {});
+        }
+        final List<ProcessorInputUser> decoded;
+        try (InputStream in = getClass().getResourceAsStream("/slskd-processor-test-response-1.json")) {
+            decoded = decoder.decode(in);
+        }
+
+        final List<ProcessorInputUser> expected = full.stream()
+                .map(r -> new SlskdSearchDetailResponse(r.fileCount(), r.hasFreeUploadSlot(), r.lockedFileCount(),
+                        List.of(), r.queueLength(), r.token(), r.uploadSpeed(), r.username(),
+                        r.files().stream()
+                                .filter(f -> !f.isLocked() && AudioFiles.isAudio(f.filename()))
+                                .toList()))
+                .filter(r -> !r.files().isEmpty())
+                .map(ProcessorInputUser::convert)
+                .toList();
+
+        assertTrue(expected.size() < full.size());
+        assertEquals(expected, decoded);
+        assertEquals(expected.stream().map(ProcessorInputUser::toResponse).toList(),
+                decoded.stream().map(ProcessorInputUser::toResponse).toList());
+    }
+
+    @Test
+    public void test_internsPathsAndNamesAcrossTheSearch() {
+
+        final SearchStringTable strings = new SearchStringTable();
+        final ProcessorInputDirectory first = ProcessorInputDirectory.builder("Album")
+                .add(strings, 1, "", "@@a\\Music\\Album\\01 One.flac", 1, false, 16, 900, 200)
+                .add(strings, 1, "", "@@a\\Music\\Album\\02 Two.flac", 1, false, 16, 900, 200)
+                .build();
+        final ProcessorInputDirectory second = ProcessorInputDirectory.builder("Album")
+                .add(strings, 1, "", "@@b\\Album\\01 One.flac", 1, false, 16, 900, 200)
+                .build();
+
+        // Two paths, two names and the extension
+        assertEquals(5, strings.size());
+        assertSame(first.name(0), second.name(0));
+        assertEquals("@@a\\Music\\Album\\02 Two.flac", first.filename(1));
+    }
+
+    @Test
+    public void test_dropsLockedAndNonAudioFiles() throws IOException {
+
+        final String json = """
+                [
+                  {
+                    "files": [
+                      {"code": 1, "extension": "", "filename": "@@a\\\\Music\\\\Album\\\\01 One.flac", "size": 20000000,
+                       "isLocked": false, "bitDepth": 16, "sampleRate": 44100, "length": 200},
+                      {"code": 1, "extension": "", "filename": "@@a\\\\Music\\\\Album\\\\cover.jpg", "size": 90000, "isLocked": false},
+                      {"code": 1, "extension": "", "filename": "@@a\\\\Music\\\\Album\\\\02 Two.FLAC", "size": 20000000,
+                       "isLocked": true},
+                      {"code": 1, "extension": "mp3", "filename": "@@a\\\\Music\\\\Other\\\\01 One.mp3", "size": 9000000,
+                       "isLocked": false, "bitRate": null, "length": 200}
+                    ],
+                    "fileCount": 4,
+                    "hasFreeUploadSlot": true,
+                    "lockedFileCount": 1,
+                    "lockedFiles": [{"filename": "@@a\\\\Music\\\\Album\\\\03 Three.flac", "isLocked": true}],
+                    "queueLength": 2,
+                    "token": 7,
+                    "uploadSpeed": 1000,
+                    "username": "someone"
+                  },
+                  {
+                    "files": [{"code": 1, "extension": "", "filename": "@@b\\\\notes.txt", "size": 100, "isLocked": false}],
+                    "username": "nothing-useful"
+                  }
+                ]
+                """;
+
+        final List<ProcessorInputUser> decoded = decoder.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, decoded.size());
+        final ProcessorInputUser user = decoded.getFirst();
+        assertEquals("someone", user.originalData().username());
+        assertEquals(1000, user.originalData().uploadSpeed());
+        assertEquals(List.of("Album", "Other"), user.directories().stream().map(ProcessorInputDirectory::parentDirName).toList());
+        assertEquals(List.of(1, 1), user.directories().stream().map(ProcessorInputDirectory::fileCount).toList());
+
+        final SlskdSearchMatchResponse flac = user.directories().getFirst().file(0);
+        assertEquals("@@a\\Music\\Album\\01 One.flac", flac.filename());
+        assertEquals(Optional.of(16), flac.bitDepth());
+        assertEquals(Optional.empty(), flac.bitRate());
+        assertEquals(Optional.of(200), flac.length());
+        assertEquals(Optional.empty(), user.directories().get(1).file(0).bitRate());
+    }
+
+    @Test
+    public void test_skipsResponsesAlreadySeen() throws IOException {
+
+        final List<ProcessorInputUser> all;
+        try (InputStream in = getClass().getResourceAsStream("/slskd-processor-test-response-1.json")) {
+            all = decoder.decode(in);
+        }
+        final SearchResponseDecoder.Decoded rest;
+        try (InputStream in = getClass().getResourceAsStream("/slskd-processor-test-response-1.json")) {
+            rest = decoder.decode(in, 10);
+        }
+        final int total;
+        try (InputStream in = getClass().getResourceAsStream("/slskd-processor-test-response-1.json")) {
+            total = JacksonConfig.MAPPER.readValue(in, new TypeReference<List<SlskdSearchDetailResponse>>() {}).size();
+        }
+
+        assertEquals(total, rest.responseCount());
+        assertFalse(rest.users().isEmpty());
+        // The users that were decoded are exactly the tail of the full decode
+        assertEquals(all.subList(all.size() - rest.users().size(), all.size()), rest.users());
+        assertTrue(rest.users().size() < all.size());
+    }
+}
@@ -0,0 +1,85 @@
+package dev.polluxus.slskd_downloader.client.slskd;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdLoginResponse;
+import dev.polluxus.slskd_downloader.util.FutureUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlskdAuthManagerTest {
+
+    private final AtomicInteger logins = new AtomicInteger();
+    private SlskdAuthManager auth;
+
+    @AfterEach
+    public void teardown() {
+        auth.close();
+    }
+
+    @Test
+    public void test_concurrentCallersShareOneLogin() {
+        final CountDownLatch release = new CountDownLatch(1);
+        auth = new SlskdAuthManager(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return loginResponse(3600);
+        }, SlskdAuthManager.DEFAULT_REFRESH_AHEAD_MILLIS);
+
+        final List<CompletableFuture<SlskdAuthManager.SlskdToken>> callers = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> auth.token()))
+                .toList();
+        FutureUtils.sleep(100);
+        release.countDown();
+
+        final SlskdAuthManager.SlskdToken first = callers.getFirst().orTimeout(5, TimeUnit.SECONDS).join();
+        callers.forEach(c -> assertSame(first, c.orTimeout(5, TimeUnit.SECONDS).join()));
+        assertEquals(1, logins.get());
+        // Still valid, so no more logins
+        assertSame(first, auth.token());
+        assertEquals(1, logins.get());
+    }
+
+    @Test
+    public void test_refreshesInBackgroundAndAfterRejection() {
+        // Lives for 14s with 10s of refresh-ahead, so is refreshed halfway through
+        auth = new SlskdAuthManager(() -> loginResponse(14), 10_000);
+
+        final SlskdAuthManager.SlskdToken first = auth.token();
+        assertEquals(1, logins.get());
+
+        final SlskdAuthManager.SlskdToken rejected = auth.token();
+        auth.invalidate(rejected);
+        final SlskdAuthManager.SlskdToken replacement = auth.token();
+        assertNotSame(first, replacement);
+        assertEquals(2, logins.get());
+        // Invalidating a token that's already been replaced does nothing
+        auth.invalidate(first);
+        assertSame(replacement, auth.token());
+
+        // Nobody asks for a token, but it's replaced anyway before it expires
+        final long deadline = System.currentTimeMillis() + 12_000;
+        while (logins.get() < 3 && System.currentTimeMillis() < deadline) {
+            FutureUtils.sleep(100);
+        }
+        assertEquals(3, logins.get());
+        assertNotSame(replacement, auth.token());
+    }
+
+    private SlskdLoginResponse loginResponse(long lifetimeSeconds) {
+
+        final int n = logins.incrementAndGet();
+        final int now = (int) (System.currentTimeMillis() / 1000);
+        return new SlskdLoginResponse((int) (now + lifetimeSeconds), now, "slskd", now, STR."token-\{n}", "Bearer");
+    }
+}
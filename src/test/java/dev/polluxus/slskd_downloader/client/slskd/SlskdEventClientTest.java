@@ -0,0 +1,184 @@
+package dev.polluxus.slskd_downloader.client.slskd;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchStateResponse;
+import dev.polluxus.slskd_downloader.config.JacksonConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlskdEventClientTest {
+
+    private static final char RS = '\u001e';
+
+    private StandInHub hub;
+    private SlskdEventClient events;
+    private List<SlskdSearchStateResponse> received;
+
+    @BeforeEach
+    public void setup() {
+        hub = new StandInHub();
+        events = new SlskdEventClient(hub::accept, JacksonConfig.MAPPER);
+        received = new CopyOnWriteArrayList<>();
+        events.addListener(received::add);
+        events.start();
+    }
+
+    @AfterEach
+    public void teardown() {
+        events.close();
+    }
+
+    @Test
+    public void test_handshakeThenSearchUpdates() {
+        assertEquals(1, hub.sent.size());
+        assertTrue(hub.sent.getFirst().startsWith("{\"protocol\":\"json\",\"version\":1}"));
+        assertFalse(events.isConnected());
+
+        hub.push(STR."{}\{RS}");
+        assertTrue(events.isConnected());
+
+        final UUID id = UUID.randomUUID();
+        final String update = STR."{\"type\":1,\"target\":\"update\",\"arguments\":[{\"id\":\"\{id}\",\"responseCount\":7,\"fileCount\":80,\"state\":\"InProgress\"}]}\{RS}";
+        // A message split across frames, followed by a ping and a message we don't care about in the same frame
+        hub.push(update.substring(0, 20), false);
+        hub.push(update.substring(20) + STR."{\"type\":6}\{RS}{\"type\":1,\"target\":\"create\",\"arguments\":[{}]}\{RS}");
+
+        assertEquals(1, received.size());
+        assertEquals(id, received.getFirst().id());
+        assertEquals(7, received.getFirst().responseCount());
+        assertEquals("InProgress", received.getFirst().state());
+
+        // Method names are case-insensitive, and this is how slskd actually sends them
+        hub.push(update.replace("\"update\"", "\"UPDATE\""));
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void test_disconnectsOnCloseAndRejectedHandshake() {
+        hub.push(STR."{}\{RS}");
+        assertTrue(events.isConnected());
+
+        hub.push(STR."{\"type\":7,\"error\":\"Server is shutting down\"}\{RS}");
+        assertFalse(events.isConnected());
+
+        final StandInHub other = new StandInHub();
+        try (SlskdEventClient rejected = new SlskdEventClient(other::accept, JacksonConfig.MAPPER).start()) {
+            other.push(STR."{\"error\":\"Unsupported protocol\"}\{RS}");
+            assertFalse(rejected.isConnected());
+            assertTrue(other.aborted);
+        }
+    }
+
+    @Test
+    public void test_sendsWaitForThePreviousOne() {
+        final StandInHub slow = new StandInHub();
+        slow.holdSends = true;
+        try (SlskdEventClient client = new SlskdEventClient(slow::accept, JacksonConfig.MAPPER).start()) {
+            assertEquals(1, slow.sent.size());
+            slow.push(STR."{}\{RS}");
+            assertTrue(client.isConnected());
+
+            // The handshake is still being sent, so the ping has to wait for it
+            client.ping();
+            assertEquals(1, slow.sent.size());
+            slow.finishSend();
+            assertEquals(2, slow.sent.size());
+            assertTrue(slow.sent.get(1).startsWith("{\"type\":6}"));
+            slow.finishSend();
+        }
+    }
+
+    /**
+     * Plays the part of slskd's search hub, on the other end of a WebSocket.
+     */
+    private static class StandInHub implements WebSocket {
+
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+        private WebSocket.Listener listener;
+        private boolean aborted = false;
+        // Whether sends stay in progress until finishSend is called
+        private boolean holdSends = false;
+        private CompletableFuture<WebSocket> inProgress = CompletableFuture.completedFuture(this);
+
+        private CompletableFuture<WebSocket> accept(WebSocket.Listener listener) {
+            this.listener = listener;
+            return CompletableFuture.completedFuture(this);
+        }
+
+        private void push(String text) {
+            push(text, true);
+        }
+
+        private void push(String text, boolean last) {
+            listener.onText(this, text, last);
+        }
+
+        private void finishSend() {
+            inProgress.complete(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendText(CharSequence data, boolean last) {
+            // As the JDK's WebSocket does
+            if (!inProgress.isDone()) {
+                throw new IllegalStateException("Send pending");
+            }
+            sent.add(data.toString());
+            inProgress = holdSends ? new CompletableFuture<>() : CompletableFuture.completedFuture(this);
+            return inProgress;
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendBinary(ByteBuffer data, boolean last) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPing(ByteBuffer message) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPong(ByteBuffer message) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendClose(int statusCode, String reason) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public String getSubprotocol() {
+            return "";
+        }
+
+        @Override
+        public boolean isOutputClosed() {
+            return false;
+        }
+
+        @Override
+        public boolean isInputClosed() {
+            return false;
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+    }
+}
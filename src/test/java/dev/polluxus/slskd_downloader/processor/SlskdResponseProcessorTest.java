@@ -3,9 +3,15 @@ package dev.polluxus.slskd_downloader.processor;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
 import dev.polluxus.slskd_downloader.config.JacksonConfig;
 import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.processor.matcher.AlbumMatchContext;
+import dev.polluxus.slskd_downloader.processor.matcher.DirectoryRejections.Reason;
 import dev.polluxus.slskd_downloader.processor.matcher.MatchStrategyType;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.processor.model.output.DownloadPlan;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorUserResult;
 import dev.polluxus.slskd_downloader.util.PrintUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -17,8 +23,11 @@ import org.reflections.scanners.Scanners;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 // TODO
 public class SlskdResponseProcessorTest extends AbstractProcessorTest {
 
@@ -62,6 +71,106 @@ public class SlskdResponseProcessorTest extends AbstractProcessorTest {
         processor = new SlskdResponseProcessor(MatchStrategyType.EDIT_DISTANCE);
     }
 
+    @Test
+    public void test_parallelProcessingMatchesSequential() {
+
+        // Plus one user sharing everything, so that there's a user big enough to be split up
+        final List<SlskdSearchDetailResponse> resps = new ArrayList<>(responses);
+        resps.add(new SlskdSearchDetailResponse(0, true, 0, List.of(), 0, 0, 1, "everyone",
+                responses.stream().flatMap(r -> r.files().stream()).toList()));
+        assertTrue(ProcessorInputUser.convert(resps.getLast()).directories().size() > SlskdResponseProcessor.DIRECTORIES_PER_TASK);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final SlskdResponseProcessor parallel = new SlskdResponseProcessor(MatchStrategyType.EDIT_DISTANCE, Set.of(), pool, 0, true);
+            final List<ProcessorUserResult> expected = processor.process(resps, albumInfo).userResults();
+            for (int run = 0; run < 5; run++) {
+                final List<ProcessorUserResult> actual = parallel.process(resps, albumInfo).userResults();
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).username(), actual.get(i).username());
+                    assertEquals(expected.get(i).scoreOfBestCandidates(), actual.get(i).scoreOfBestCandidates());
+                    assertEquals(expected.get(i).bestCandidates(), actual.get(i).bestCandidates());
+                    assertEquals(expected.get(i).directories().size(), actual.get(i).directories().size());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_limitedRankingKeepsTheBestDownloadableUsers() {
+
+        final List<ProcessorUserResult> downloadable = processor.process(responses, albumInfo).userResults().stream()
+                .filter(r -> ActiveDownloadProcessor.isAcceptable(r, albumInfo))
+                .toList();
+        assertTrue(downloadable.size() > 3);
+
+        for (int limit : new int[]{1, 3, downloadable.size(), downloadable.size() + 10}) {
+            final SlskdResponseProcessor limited = new SlskdResponseProcessor(MatchStrategyType.EDIT_DISTANCE, Set.of(), null, limit, false);
+            final List<ProcessorUserResult> actual = limited.process(responses, albumInfo).userResults();
+            final List<ProcessorUserResult> expected = downloadable.subList(0, Math.min(limit, downloadable.size()));
+            assertEquals(expected.stream().map(ProcessorUserResult::username).toList(),
+                    actual.stream().map(ProcessorUserResult::username).toList());
+            assertEquals(expected.stream().map(ProcessorUserResult::bestCandidates).toList(),
+                    actual.stream().map(ProcessorUserResult::bestCandidates).toList());
+            // Not verbose, so only the best candidates are kept
+            actual.forEach(r -> assertTrue(r.directories().isEmpty()));
+            actual.forEach(r -> assertEquals(albumInfo.tracks().size(), DownloadPlan.of(r).files().size()));
+        }
+    }
+
+    @Test
+    public void test_sortKeyOrdersLikeRoundedScoreThenUploadSpeed() {
+
+        final List<ProcessorUserResult> users = new ArrayList<>();
+        for (double score : new double[]{0, 0.024, 0.026, 0.5, 0.94, 0.96, 0.974, 0.976, 1.0}) {
+            for (int speed : new int[]{Integer.MIN_VALUE, -1, 0, 1, 1_000_000, Integer.MAX_VALUE}) {
+                users.add(new ProcessorUserResult("u", List.of(), speed, score, List.of()));
+            }
+        }
+        for (var a : users) {
+            for (var b : users) {
+                final double aScore = Math.round(a.scoreOfBestCandidates() * 20.00) / 20.00;
+                final double bScore = Math.round(b.scoreOfBestCandidates() * 20.00) / 20.00;
+                final int expected = aScore != bScore ? Double.compare(aScore, bScore) : Integer.compare(a.uploadSpeed(), b.uploadSpeed());
+                assertEquals(Integer.signum(expected),
+                        Integer.signum(Long.compare(SlskdResponseProcessor.sortKey(a), SlskdResponseProcessor.sortKey(b))),
+                        () -> STR."\{a} vs \{b}");
+            }
+        }
+    }
+
+    @Test
+    public void test_prefilterThrowsOutHopelessDirectories() {
+
+        final String track = albumInfo.tracks().getFirst().title();
+        final SlskdSearchDetailResponse resp = new SlskdSearchDetailResponse(0, true, 0, List.of(), 0, 0, 1, "hopeless", List.of(
+                file(STR."music\\Artwork\\\{track}.jpg", 100_000, false),
+                file("music\\Artwork\\back.png", 100_000, false),
+                file(STR."music\\Locked\\\{track}.flac", 30_000_000, true),
+                file(STR."music\\Empty\\\{track}.flac", 0, false),
+                file(STR."music\\Empty\\\{track}.cue", 1_000, false),
+                file(STR."music\\Single\\\{track}.flac", 30_000_000, false)));
+
+        final AlbumMatchContext context = AlbumMatchContext.of(albumInfo);
+        assertTrue(processor.processUser(ProcessorInputUser.convert(resp), context).isPresent());
+        assertEquals(Map.of(Reason.NO_AUDIO, 1L, Reason.LOCKED, 1L, Reason.EMPTY, 1L, Reason.TOO_FEW_FILES, 0L),
+                context.directoryRejections().counts());
+
+        // One file can't make up the album, so there's no point matching it when only downloadable users are kept
+        final SlskdResponseProcessor limited = new SlskdResponseProcessor(MatchStrategyType.EDIT_DISTANCE, Set.of(), null, 5, false);
+        final AlbumMatchContext limitedContext = AlbumMatchContext.of(albumInfo);
+        assertTrue(limited.processUser(ProcessorInputUser.convert(resp), limitedContext).isEmpty());
+        assertEquals(1L, limitedContext.directoryRejections().counts().get(Reason.TOO_FEW_FILES));
+        assertEquals(0L, limitedContext.directoryMatches().stats().directories());
+    }
+
+    private static SlskdSearchMatchResponse file(String filename, long size, boolean locked) {
+        return new SlskdSearchMatchResponse(1, "", filename, size, locked, Optional.empty(), Optional.empty(), Optional.empty());
+    }
+
     @Test
     public void testProcessor_dataPreview() {
 
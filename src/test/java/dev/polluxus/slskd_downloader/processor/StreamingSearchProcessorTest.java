@@ -0,0 +1,53 @@
+package dev.polluxus.slskd_downloader.processor;
+
+import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.processor.DownloadProcessor.DownloadResult;
+import dev.polluxus.slskd_downloader.processor.matcher.MatchStrategyType;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorSearchResult;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorUserResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingSearchProcessorTest extends AbstractProcessorTest {
+
+    private final SlskdResponseProcessor processor = new SlskdResponseProcessor(MatchStrategyType.EDIT_DISTANCE);
+
+    @Test
+    public void test_streamedResultMatchesOneOffProcess() {
+
+        final List<ProcessorUserResult> offered = new ArrayList<>();
+        final StreamingSearchProcessor streaming = new StreamingSearchProcessor(processor, albumInfo, new SearchResultConsumer() {
+            @Override
+            public void offer(AlbumInfo albumInfo, ProcessorUserResult userResult) {
+                offered.add(userResult);
+            }
+
+            @Override
+            public CompletableFuture<DownloadResult> apply(ProcessorSearchResult processorSearchResult) {
+                return CompletableFuture.completedFuture(DownloadResult.DIDNT_TRY);
+            }
+        });
+
+        final List<ProcessorInputUser> inputs = responses.stream().map(ProcessorInputUser::convert).toList();
+        // Stream the first half of the responses in small batches, then let the rest turn up at the end
+        final int half = responses.size() / 2;
+        for (int i = 0; i < half; i += 7) {
+            streaming.onResponses(inputs.subList(i, Math.min(i + 7, half)));
+        }
+        final ProcessorSearchResult streamed = streaming.finish(inputs);
+        final ProcessorSearchResult expected = processor.process(responses, albumInfo);
+
+        assertFalse(offered.isEmpty());
+        assertEquals(expected.userResults().size(), streamed.userResults().size());
+        for (int i = 0; i < expected.userResults().size(); i++) {
+            assertEquals(expected.userResults().get(i).username(), streamed.userResults().get(i).username());
+            assertEquals(expected.userResults().get(i).scoreOfBestCandidates(), streamed.userResults().get(i).scoreOfBestCandidates());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
+import dev.polluxus.slskd_downloader.processor.AbstractProcessorTest;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputDirectory;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.processor.model.input.SearchStringTable;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorFileResult;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorFileResultBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirectoryMatchCacheTest extends AbstractProcessorTest {
+
+    @Test
+    public void test_sameMatchesAsMatchingEachDirectory() {
+
+        final SearchStringTable strings = new SearchStringTable();
+        final List<ProcessorInputDirectory> dirs = new ArrayList<>();
+        responses.forEach(r -> dirs.addAll(ProcessorInputUser.convert(r, strings).directories()));
+        // Everything again, under other users' paths and listed backwards
+        responses.forEach(r -> dirs.addAll(ProcessorInputUser.convert(moved(r), strings).directories()));
+
+        for (var strategy : MatchStrategyType.values()) {
+            final AlbumMatchContext shared = AlbumMatchContext.of(albumInfo);
+            for (var dir : dirs) {
+                assertEquals(built(strategy.match(dir, AlbumMatchContext.of(albumInfo))), built(strategy.match(dir, shared)),
+                        dir::toString);
+            }
+            final DirectoryMatchCache.Stats stats = shared.directoryMatches().stats();
+            assertEquals(dirs.size(), stats.directories());
+            assertTrue(stats.reused() >= dirs.size() / 2, stats::toString);
+        }
+    }
+
+    @Test
+    public void test_copySeesItsOwnFiles() {
+
+        final SlskdSearchDetailResponse original = responses.stream()
+                .max(Comparator.comparingInt(r -> r.files().size()))
+                .orElseThrow();
+        final SearchStringTable strings = new SearchStringTable();
+        final AlbumMatchContext context = AlbumMatchContext.of(albumInfo);
+        ProcessorInputUser.convert(original, strings).directories()
+                .forEach(d -> MatchStrategyType.EDIT_DISTANCE.match(d, context));
+
+        final ProcessorInputUser copy = ProcessorInputUser.convert(moved(original), strings);
+        final long before = context.directoryMatches().stats().reused();
+        int matched = 0;
+        for (var dir : copy.directories()) {
+            for (var builders : MatchStrategyType.EDIT_DISTANCE.match(dir, context).values()) {
+                for (var b : builders) {
+                    assertTrue(b.originalData().filename().startsWith("moved\\"), b.originalData()::filename);
+                    matched++;
+                }
+            }
+        }
+        assertTrue(matched > 0);
+        assertEquals(before + copy.directories().size(), context.directoryMatches().stats().reused());
+    }
+
+    // The same files under another root, in reverse order
+    private static SlskdSearchDetailResponse moved(SlskdSearchDetailResponse r) {
+
+        final List<SlskdSearchMatchResponse> files = new ArrayList<>(r.files().stream()
+                .map(f -> new SlskdSearchMatchResponse(f.code(), f.extension(), "moved\\" + f.filename(), f.size(),
+                        f.isLocked(), f.bitDepth(), f.bitRate(), f.length()))
+                .toList());
+        Collections.reverse(files);
+        return new SlskdSearchDetailResponse(r.fileCount(), r.hasFreeUploadSlot(), r.lockedFileCount(), List.of(),
+                r.queueLength(), r.token(), r.uploadSpeed(), r.username() + "-copy", files);
+    }
+
+    // Builders don't compare by value, and the order they come out in matters when picking candidates
+    private static List<Map.Entry<String, List<ProcessorFileResult>>> built(Map<String, List<ProcessorFileResultBuilder>> matches) {
+
+        return matches.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().stream().map(ProcessorFileResultBuilder::build).toList()))
+                .toList();
+    }
+}
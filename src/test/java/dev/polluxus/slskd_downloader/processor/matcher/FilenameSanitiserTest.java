@@ -0,0 +1,183 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.config.JacksonConfig;
+import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.model.AlbumInfo.AlbumTrack;
+import dev.polluxus.slskd_downloader.util.FilenameUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static dev.polluxus.slskd_downloader.util.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FilenameSanitiserTest {
+
+    // Request and response of each fixture
+    private static final String[][] FIXTURES = {
+            {"/slskd-processor-test-request-1.json", "/slskd-processor-test-response-1.json"},
+            {"/slskd-processor-request-demdike-tryptych.json", "/slskd-processor-response-demdike-tryptych.json"},
+    };
+
+    @Test
+    public void test_sameAsPatternsOnFixtures() throws IOException {
+
+        final List<AlbumInfo> albums = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        for (var fixture : FIXTURES) {
+            albums.add(read(fixture[0], new TypeReference<>() {}));
+            read(fixture[1], new TypeReference<List<SlskdSearchDetailResponse>>() {}).stream()
+                    .flatMap(r -> r.files().stream())
+                    .map(f -> FilenameUtils.getName(f.filename()))
+                    .forEach(names::add);
+        }
+
+        int changed = 0;
+        // Every name against every album, so that names with and without the album's artists are covered
+        for (var albumInfo : albums) {
+            final AlbumMatchContext context = AlbumMatchContext.of(albumInfo);
+            for (var name : names) {
+                final String expected = PatternSanitiser.sanitise(name, albumInfo);
+                assertEquals(expected, FilenameSanitiser.sanitise(name, context), name);
+                if (!expected.equals(FilenameUtils.removeExtension(name))) {
+                    changed++;
+                }
+            }
+        }
+        assertTrue(changed > 1000);
+    }
+
+    @Test
+    public void test_sameAsPatternsOnAwkwardNames() {
+
+        final AlbumInfo albumInfo = new AlbumInfo("Blue Lines", null,
+                List.of(new AlbumTrack("1", "Safe From Harm"), new AlbumTrack("2", "Blue Lines"),
+                        new AlbumTrack("3", "Five Man Army")),
+                List.of("Massive Attack", "Horace Andy", "Mass", "ive", ""));
+        final List<String> names = List.of(
+                "01 - Massive Attack - Safe From Harm.flac",
+                "massive attack - 01 - safe from harm.mp3",
+                "MASSIVE ATTACK-SAFE FROM HARM.mp3",
+                "A1 - Safe From Harm.flac",
+                "B2- Blue Lines.flac",
+                "1-02 Blue Lines.flac",
+                "1-02-Blue Lines.flac",
+                "01-Blue Lines.flac",
+                "01.Blue Lines.flac",
+                "01 . - Blue Lines.flac",
+                "\t01\tBlue Lines.flac",
+                "Blue Lines - Blue Lines.flac",
+                "Blue Lines - Blue Lines - blue lines.flac",
+                "Blue Lines.flac",
+                "Massive Attack.flac",
+                "01 Massive Attack.flac",
+                "Horace Andy.mp3",
+                "Five Man Army (feat. Horace Andy).flac",
+                "Five Man Army (ft Horace Andy) (Remastered).flac",
+                "Five Man Army  \t(featuring Horace Andy) (feat. Tricky).flac",
+                "Five Man Army (feat).flac",
+                "Five Man Army (feat.) ) x.flac",
+                "Five Man Army (Feat. Horace Andy).flac",
+                "Five Man Army (feat. Horace (Andy)).flac",
+                "(feat. Horace Andy) Five Man Army.flac",
+                "Massive(feat. X) Attack.flac",
+                "Mass ive Attack.flac",
+                "MassMassive Attackive.flac",
+                "Safe From Harm &amp; Stuff.flac",
+                "Safe From Harm &#8217;97.flac",
+                "Safe From Harm & Stuff.flac",
+                "Five Man Army’s Return.flac",
+                "Five Man Army’s (feat. Tricky’s Mate).flac",
+                "no extension",
+                ".flac",
+                "",
+                "-",
+                "123",
+                "_ - .flac",
+                "Ａ1 - Blue Lines.flac",
+                "01 Blue Linés.flac");
+
+        for (var album : List.of(albumInfo, new AlbumInfo("", null, albumInfo.tracks(), List.of()))) {
+            final AlbumMatchContext context = AlbumMatchContext.of(album);
+            for (var name : names) {
+                assertEquals(PatternSanitiser.sanitise(name, album), FilenameSanitiser.sanitise(name, context), name);
+            }
+        }
+    }
+
+    private static <T> T read(String resource, TypeReference<T> type) throws IOException {
+
+        try (InputStream in = FilenameSanitiserTest.class.getResourceAsStream(resource)) {
+            return JacksonConfig.MAPPER.readValue(in, type);
+        }
+    }
+
+    /**
+     * How names were sanitised before, for comparison.
+     */
+    private static class PatternSanitiser {
+
+        private static String applyTrackNumberMatchers(final String filename) {
+
+            final var multiDiskMatcher = MULTI_DISK_TRACK_NUMBER_PATTERN.matcher(filename);
+            if (multiDiskMatcher.find()) {
+                return multiDiskMatcher.replaceFirst("");
+            }
+            final var vinylMatcher = VINYL_SIDE_TRACK_NUMBER_PATTERN.matcher(filename);
+            if (vinylMatcher.find()) {
+                return vinylMatcher.replaceFirst("");
+            }
+            return GENERIC_TRACK_NUMBER_PATTERN.matcher(filename).replaceFirst("");
+        }
+
+        private static String maybeStripArtistName(final String filename, List<String> artists) {
+
+            final String after = artists.stream().reduce(filename,
+                    (old, in) -> Pattern.compile(Pattern.quote(in), Pattern.CASE_INSENSITIVE).matcher(old).replaceFirst(""));
+            final String afterTrackNumberMatchers = applyTrackNumberMatchers(after);
+            if (after.length() != filename.length() && afterTrackNumberMatchers.isEmpty()) {
+                return filename;
+            }
+            return after;
+        }
+
+        private static String maybeStripAlbumName(final String filename, AlbumInfo albumInfo) {
+
+            final int expectedOccurrences = albumInfo.hasTrackContainingTitle() ? 1 : 0;
+            final Pattern p = Pattern.compile(Pattern.quote(albumInfo.name()), Pattern.CASE_INSENSITIVE);
+            long titleMatches = p.matcher(filename).results().count();
+            String strippedName = filename;
+            if (titleMatches > expectedOccurrences) {
+                strippedName = p.matcher(strippedName).replaceFirst("");
+            }
+            final String afterTrackNumberMatchers = applyTrackNumberMatchers(strippedName);
+            if (afterTrackNumberMatchers.isEmpty()) {
+                return filename;
+            }
+            return strippedName;
+        }
+
+        static String sanitise(final String filename, final AlbumInfo albumInfo) {
+
+            return Optional.of(filename)
+                    .map(FilenameUtils::removeExtension)
+                    .map(StringEscapeUtils::unescapeHtml4)
+                    .map(n -> maybeStripArtistName(n, albumInfo.artists()))
+                    .map(n -> maybeStripAlbumName(n, albumInfo))
+                    .map(n -> LEADING_GARBAGE.matcher(n).replaceFirst(""))
+                    .map(PatternSanitiser::applyTrackNumberMatchers)
+                    .map(n -> LEADING_GARBAGE.matcher(n).replaceFirst(""))
+                    .map(n -> FEATURED_ARTIST_MATCHER.matcher(n).replaceAll(""))
+                    .map(n -> n.replaceAll("’", "'"))
+                    .orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
+import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import dev.polluxus.slskd_downloader.model.AlbumInfo.AlbumTrack;
+import dev.polluxus.slskd_downloader.processor.AbstractProcessorTest;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputDirectory;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.processor.model.input.SearchStringTable;
+import dev.polluxus.slskd_downloader.processor.model.output.ProcessorFileResultBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatternMatchStrategyTest extends AbstractProcessorTest {
+
+    private final PatternMatchStrategy strategy = new PatternMatchStrategy();
+
+    @Test
+    public void test_sameMatchesAsLiteralPatternsOnFixture() {
+
+        final AlbumMatchContext context = AlbumMatchContext.of(albumInfo);
+        final SearchStringTable strings = new SearchStringTable();
+        int matched = 0;
+        for (var r : responses) {
+            for (var dir : ProcessorInputUser.convert(r, strings).directories()) {
+                final Map<String, List<String>> actual = filenames(strategy.apply(dir, context));
+                assertEquals(withPatterns(dir, albumInfo), actual, dir::toString);
+                matched += actual.size();
+            }
+        }
+        assertTrue(matched > 0);
+    }
+
+    @Test
+    public void test_titlesAreTakenLiterally() {
+
+        final AlbumInfo album = new AlbumInfo("Odd Titles", null, List.of(
+                new AlbumTrack("1", "Why?"), new AlbumTrack("2", "(Intro)"), new AlbumTrack("3", "C++"),
+                new AlbumTrack("4", "Intro")), List.of("Someone"));
+        final ProcessorInputDirectory dir = ProcessorInputDirectory.builder("Odd Titles")
+                .add(new SearchStringTable(), file("01 - WHY?.flac"))
+                .add(new SearchStringTable(), file("02 - (intro).flac"))
+                .add(new SearchStringTable(), file("03 - c++.flac"))
+                .add(new SearchStringTable(), file("04 - Wh.flac"))
+                .build();
+
+        final Map<String, List<String>> matches = filenames(strategy.apply(dir, AlbumMatchContext.of(album)));
+        assertEquals(Map.of(
+                "1 - Why?", List.of("Odd Titles\\01 - WHY?.flac"),
+                "2 - (Intro)", List.of("Odd Titles\\02 - (intro).flac"),
+                "3 - C++", List.of("Odd Titles\\03 - c++.flac"),
+                "4 - Intro", List.of("Odd Titles\\02 - (intro).flac")), matches);
+    }
+
+    private static SlskdSearchMatchResponse file(String name) {
+        return new SlskdSearchMatchResponse(1, "flac", "Odd Titles\\" + name, 30_000_000, false, Optional.empty(), Optional.empty(), Optional.empty());
+    }
+
+    // How the strategy used to match, with the titles quoted
+    private static Map<String, List<String>> withPatterns(ProcessorInputDirectory dir, AlbumInfo albumInfo) {
+
+        final Map<String, List<String>> ret = new HashMap<>();
+        for (int i = 0; i < dir.fileCount(); i++) {
+            for (var track : albumInfo.tracks()) {
+                if (Pattern.compile(Pattern.quote(track.title()), Pattern.CASE_INSENSITIVE).matcher(dir.name(i)).find()) {
+                    ret.computeIfAbsent(track.numberAndTitle(), k -> new ArrayList<>()).add(dir.filename(i));
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static Map<String, List<String>> filenames(Map<String, List<ProcessorFileResultBuilder>> matches) {
+
+        final Map<String, List<String>> ret = new HashMap<>();
+        matches.forEach((k, v) -> ret.put(k, v.stream().map(b -> b.originalData().filename()).toList()));
+        return ret;
+    }
+}
@@ -0,0 +1,78 @@
+package dev.polluxus.slskd_downloader.processor.matcher;
+
+import dev.polluxus.slskd_downloader.processor.AbstractProcessorTest;
+import dev.polluxus.slskd_downloader.processor.matcher.AlbumMatchContext.TrackTarget;
+import dev.polluxus.slskd_downloader.util.BoundedEditDistance;
+import dev.polluxus.slskd_downloader.util.FilenameUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrackTitleIndexTest extends AbstractProcessorTest {
+
+    @Test
+    public void test_neverRulesOutAPairWithinTheThreshold() {
+
+        final AlbumMatchContext context = AlbumMatchContext.of(albumInfo);
+        final List<TrackTarget> targets = context.targets();
+        final List<String> names = responses.stream()
+                .flatMap(r -> r.files().stream())
+                .map(f -> FilenameUtils.getBaseName(f.filename()).toLowerCase())
+                .toList();
+
+        int withinThreshold = 0;
+        for (var name : names) {
+            final boolean[] candidates = context.titleIndex().candidates(name);
+            // Also the same name shifted about a bit, so that there are plenty of near misses
+            final boolean[] trimmedCandidates = context.titleIndex().candidates(trimTrackNumber(name));
+            for (int t = 0; t < targets.size(); t++) {
+                if (targets.get(t).distanceFunc().apply(name) != -1) {
+                    assertTrue(candidates[t], () -> name);
+                    withinThreshold++;
+                }
+                if (targets.get(t).distanceFunc().apply(trimTrackNumber(name)) != -1) {
+                    assertTrue(trimmedCandidates[t], () -> name);
+                    withinThreshold++;
+                }
+            }
+        }
+
+        final TrackTitleIndex.Stats stats = context.titleIndex().stats();
+        assertTrue(withinThreshold > 0);
+        assertEquals(2L * names.size() * targets.size(), stats.pairs());
+        assertTrue(stats.prunedRatio() > 0.9, () -> STR."Only pruned \{stats.prunedRatio()}");
+    }
+
+    @Test
+    public void test_shortAndRepetitiveTitlesAreNotOverPruned() {
+
+        final List<String> titles = List.of("", "a", "ab", "aa", "abc", "abab", "aaaa", "abcabc");
+        final int[] thresholds = titles.stream().mapToInt(t -> t.length() <= 2 ? 1 : 2).toArray();
+        final TrackTitleIndex index = new TrackTitleIndex(titles, thresholds);
+
+        // Every string of up to five characters from a small alphabet
+        List<String> texts = List.of("");
+        final List<String> all = new ArrayList<>(texts);
+        for (int length = 1; length <= 5; length++) {
+            texts = texts.stream().flatMap(t -> Stream.of(t + "a", t + "b", t + "c")).toList();
+            all.addAll(texts);
+        }
+        for (var text : all) {
+            final boolean[] candidates = index.candidates(text);
+            for (int t = 0; t < titles.size(); t++) {
+                if (BoundedEditDistance.compile(titles.get(t), thresholds[t]).apply(text) != -1) {
+                    assertTrue(candidates[t], STR."\{text} vs \{titles.get(t)}");
+                }
+            }
+        }
+        assertTrue(index.stats().pruned() > 0);
+    }
+
+    private static String trimTrackNumber(String name) {
+        return name.replaceFirst("^[0-9. -]+", "");
+    }
+}
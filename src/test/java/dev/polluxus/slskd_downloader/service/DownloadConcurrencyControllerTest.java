@@ -0,0 +1,88 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadDirectoryResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadFileResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static dev.polluxus.slskd_downloader.service.DownloadConcurrencyController.EVALUATION_POLLS;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadConcurrencyControllerTest {
+
+    private static final double PER_USER_BYTES_PER_SECOND = 200 * 1024;
+
+    @Test
+    public void test_slowLinkSettlesBelowInitialLimit() {
+        // Room for about 10 users' worth of throughput, and contention costs a little beyond that
+        final DownloadConcurrencyController controller = simulate(30, 2 * 1024 * 1024);
+
+        assertTrue(controller.currentLimit() < 30, STR."Limit was \{controller.currentLimit()}");
+        assertTrue(controller.currentLimit() >= 6, STR."Limit was \{controller.currentLimit()}");
+    }
+
+    @Test
+    public void test_fastLinkClimbsAboveInitialLimit() {
+        final DownloadConcurrencyController controller = simulate(30, 100 * 1024 * 1024);
+
+        assertTrue(controller.currentLimit() > 30, STR."Limit was \{controller.currentLimit()}");
+        assertTrue(controller.measuredBytesPerSecond() > 30 * PER_USER_BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void test_limitHeldWhenNotSaturated() {
+        final DownloadConcurrencyController controller = new DownloadConcurrencyController(30);
+        for (int i = 0; i < EVALUATION_POLLS * 20; i++) {
+            controller.onSample(5 * PER_USER_BYTES_PER_SECOND, 5);
+        }
+        assertEquals(30, controller.currentLimit());
+    }
+
+    @Test
+    public void test_failedFetchDoesntLoseTransferredBytes() {
+        final DownloadConcurrencyController controller = new DownloadConcurrencyController(30);
+        final SlskdDownloadFileResponse alice = SlskdServiceTest.fileResponse("a1", "InProgress", 0);
+        final SlskdDownloadFileResponse bob = SlskdServiceTest.fileResponse("b1", "InProgress", 0);
+        final long rate = 100 * 1024;
+
+        controller.observe(List.of(downloading("alice", alice), downloading("bob", bob)), Set.of(), 2, 0);
+        for (int poll = 1; poll <= EVALUATION_POLLS; poll++) {
+            final long bytes = poll * rate;
+            final List<SlskdGetDownloadResponse> downloads = poll == 5
+                    // Bob couldn't be fetched this time, so what they transferred shows up on the next poll instead
+                    ? List.of(downloading("alice", SlskdServiceTest.withProgress(alice, bytes)))
+                    : List.of(downloading("alice", SlskdServiceTest.withProgress(alice, bytes)),
+                              downloading("bob", SlskdServiceTest.withProgress(bob, bytes)));
+            controller.observe(downloads, poll == 5 ? Set.of("bob") : Set.of(), 2, poll * 1000L);
+        }
+
+        assertEquals(2 * rate, controller.measuredBytesPerSecond(), 1);
+    }
+
+    private static SlskdGetDownloadResponse downloading(final String username, final SlskdDownloadFileResponse file) {
+
+        return new SlskdGetDownloadResponse(username, List.of(new SlskdDownloadDirectoryResponse("dir", 1, List.of(file))));
+    }
+
+    /**
+     * Runs the controller against a link where every user is downloaded from at the same rate,
+     * up to the capacity of the link, with a small penalty per user once it's saturated.
+     */
+    private static DownloadConcurrencyController simulate(int initialLimit, double linkCapacity) {
+
+        final DownloadConcurrencyController controller = new DownloadConcurrencyController(initialLimit);
+        for (int i = 0; i < EVALUATION_POLLS * 200; i++) {
+            // There's always more to download than the limit allows
+            final int active = controller.currentLimit();
+            final double demand = active * PER_USER_BYTES_PER_SECOND;
+            final double throughput = demand <= linkCapacity
+                    ? demand
+                    : linkCapacity * Math.pow(0.97, (demand - linkCapacity) / PER_USER_BYTES_PER_SECOND);
+            controller.onSample(throughput, active);
+        }
+        return controller;
+    }
+}
@@ -0,0 +1,61 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchStateResponse;
+import dev.polluxus.slskd_downloader.service.SearchCompletionDetector.Outcome;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static dev.polluxus.slskd_downloader.service.SearchCompletionDetector.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchCompletionDetectorTest {
+
+    @Test
+    public void test_stopsOnceCountsPlateau() {
+        final SearchCompletionDetector detector = new SearchCompletionDetector(0);
+
+        long now = 0;
+        assertEquals(Outcome.PENDING, detector.observe(state("InProgress", 2, 40), now));
+        now += detector.nextPollDelayMillis();
+        assertEquals(Outcome.PENDING, detector.observe(state("InProgress", 5, 120), now));
+        assertEquals(INITIAL_POLL_INTERVAL_MILLIS, detector.nextPollDelayMillis());
+
+        // Counts stop changing: the interval should back off until the plateau is called
+        long previousDelay = detector.nextPollDelayMillis();
+        for (int i = 0; i < PLATEAU_POLLS - 1; i++) {
+            now += detector.nextPollDelayMillis();
+            assertEquals(Outcome.PENDING, detector.observe(state("InProgress", 5, 120), Math.max(now, MIN_SEARCH_MILLIS)));
+            assertTrue(detector.nextPollDelayMillis() > previousDelay);
+            previousDelay = detector.nextPollDelayMillis();
+        }
+        assertEquals(Outcome.PLATEAUED, detector.observe(state("InProgress", 5, 120), Math.max(now, MIN_SEARCH_MILLIS)));
+    }
+
+    @Test
+    public void test_doesNotPlateauWithoutResponses() {
+        final SearchCompletionDetector detector = new SearchCompletionDetector(0);
+
+        for (int i = 0; i < PLATEAU_POLLS * 2; i++) {
+            assertEquals(Outcome.PENDING, detector.observe(state("InProgress", 0, 0), MIN_SEARCH_MILLIS + i));
+        }
+        assertEquals(Outcome.TIMED_OUT, detector.observe(state("InProgress", 0, 0), MAX_SEARCH_MILLIS));
+    }
+
+    @Test
+    public void test_completedAndEnoughMatches() {
+        final SearchCompletionDetector completed = new SearchCompletionDetector(0);
+        assertEquals(Outcome.COMPLETED, completed.observe(state("Completed, TimedOut", 3, 30), 1000));
+
+        final SearchCompletionDetector enough = new SearchCompletionDetector(0);
+        assertEquals(Outcome.PENDING, enough.observe(state("InProgress", 3, 30), 1000));
+        enough.enoughMatches();
+        assertEquals(Outcome.ENOUGH_MATCHES, enough.observe(state("InProgress", 4, 30), 2000));
+    }
+
+    private static SlskdSearchStateResponse state(String state, int responseCount, int fileCount) {
+
+        return new SlskdSearchStateResponse(null, fileCount, null, false, 0, responseCount, List.of(),
+                "any", null, state, 0);
+    }
+}
@@ -0,0 +1,87 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.util.FutureUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchSchedulerTest {
+
+    private SearchScheduler scheduler;
+
+    @AfterEach
+    public void teardown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void test_neverExceedsMaxInFlight() {
+        scheduler = new SearchScheduler(3, 0, 1000);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        final List<CompletableFuture<Integer>> futures = IntStream.range(0, 12)
+                .mapToObj(i -> scheduler.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    FutureUtils.sleep(50);
+                    running.decrementAndGet();
+                    return i;
+                }))
+                .toList();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        assertEquals(3, maxRunning.get());
+        assertEquals(12, scheduler.stats().dispatched());
+        assertEquals(0, scheduler.stats().inFlight());
+        assertEquals(0, scheduler.stats().queueDepth());
+    }
+
+    @Test
+    public void test_slowSearchDoesNotHoldUpOtherSlots() throws InterruptedException {
+        scheduler = new SearchScheduler(2, 0, 1000);
+        final CountDownLatch slowSearch = new CountDownLatch(1);
+
+        final CompletableFuture<String> slow = scheduler.submit(() -> {
+            try {
+                slowSearch.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return "slow";
+        });
+        final List<CompletableFuture<String>> fast = IntStream.range(0, 5)
+                .mapToObj(i -> scheduler.submit(() -> "fast"))
+                .toList();
+
+        // All the fast searches should get through the remaining slot while the slow one is still running
+        CompletableFuture.allOf(fast.toArray(CompletableFuture[]::new)).orTimeout(5, TimeUnit.SECONDS).join();
+        assertFalse(slow.isDone());
+        assertEquals(1, scheduler.stats().inFlight());
+
+        slowSearch.countDown();
+        assertEquals("slow", slow.join());
+    }
+
+    @Test
+    public void test_minimumSpacingBetweenSubmissions() {
+        scheduler = new SearchScheduler(5, 100, 1000);
+        final long start = System.nanoTime();
+
+        CompletableFuture.allOf(IntStream.range(0, 4)
+                .mapToObj(i -> scheduler.submit(() -> i))
+                .toArray(CompletableFuture[]::new)).join();
+
+        // Three gaps of at least 100ms between the four submissions. The last one was queued just after
+        // the first was dispatched, so it waited for (almost) all three gaps.
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+        assertTrue(scheduler.stats().maxWait().toMillis() >= 250);
+    }
+}
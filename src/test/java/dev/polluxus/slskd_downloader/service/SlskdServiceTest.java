@@ -1,19 +1,39 @@
 package dev.polluxus.slskd_downloader.service;
 
 import dev.polluxus.slskd_downloader.client.slskd.SlskdClient;
+import dev.polluxus.slskd_downloader.client.slskd.SlskdEventClient;
+import dev.polluxus.slskd_downloader.client.slskd.request.SlskdDownloadRequest;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadDirectoryResponse;
 import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadFileResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse.SlskdSearchMatchResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchStateResponse;
+import dev.polluxus.slskd_downloader.processor.model.input.ProcessorInputUser;
+import dev.polluxus.slskd_downloader.service.SlskdService.Subscription;
+import dev.polluxus.slskd_downloader.store.SearchResultCache;
+import dev.polluxus.slskd_downloader.util.FutureUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
-import static dev.polluxus.slskd_downloader.service.SlskdService.MAX_CONCURRENT_ACTIVE_DOWNLOADS;
+import static dev.polluxus.slskd_downloader.service.SlskdService.INITIAL_CONCURRENT_ACTIVE_DOWNLOADS;
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class SlskdServiceTest {
 
@@ -29,24 +49,233 @@ public class SlskdServiceTest {
 
     @Test
     public void test_downloadSynchronisation() {
-        final List<SlskdGetDownloadResponse> busyResponse = IntStream.range(0, MAX_CONCURRENT_ACTIVE_DOWNLOADS)
+        final List<SlskdGetDownloadResponse> busyResponse = IntStream.range(0, INITIAL_CONCURRENT_ACTIVE_DOWNLOADS)
                 .mapToObj(i -> new SlskdGetDownloadResponse("any", List.of(
                         new SlskdDownloadDirectoryResponse("any", 1, List.of(
                                 minimalResponse("InProgress"))))))
                 .toList();
         // Return busy three times, then allow it
-        when(client.getAllDownloads()).thenReturn(busyResponse, busyResponse, busyResponse, List.of());
+        when(client.getAllDownloads())
+                .thenReturn(busyResponse)
+                .thenReturn(busyResponse)
+                .thenReturn(busyResponse)
+                .thenReturn(List.of());
 
         final long startMillis = System.currentTimeMillis();
 
-        service.start();
+        service.startDownloadPoll(1000);
 
-        final boolean result = service.initiateDownloads("any", List.of());
-        assertTrue(result);
+        final CompletableFuture<Boolean> result = service.initiateDownloads("any", List.of());
+        // The caller isn't held up while waiting for a slot
+        assertTrue(System.currentTimeMillis() - startMillis < 500);
+        assertTrue(result.orTimeout(10, TimeUnit.SECONDS).join());
         // Should have taken roughly three seconds to reach this point in the control flow
         assertTrue(System.currentTimeMillis() - startMillis > 2900);
     }
 
+    @Test
+    public void test_acquireDownloadSlotDoesNotBlock() {
+        final List<SlskdGetDownloadResponse> busyResponse = IntStream.range(0, INITIAL_CONCURRENT_ACTIVE_DOWNLOADS)
+                .mapToObj(i -> new SlskdGetDownloadResponse("any", List.of(
+                        new SlskdDownloadDirectoryResponse("any", 1, List.of(
+                                minimalResponse("InProgress"))))))
+                .toList();
+        // Return busy twice, then allow it
+        when(client.getAllDownloads())
+                .thenReturn(busyResponse)
+                .thenReturn(busyResponse)
+                .thenReturn(List.of());
+
+        service.startDownloadPoll(1000);
+
+        final long startMillis = System.currentTimeMillis();
+        final CompletableFuture<Void> slot = service.acquireDownloadSlot();
+        // The caller gets control back straight away...
+        assertTrue(System.currentTimeMillis() - startMillis < 500);
+        assertFalse(slot.isDone());
+        // ...and the slot is granted once the poll sees capacity free up
+        slot.orTimeout(5, TimeUnit.SECONDS).join();
+        assertTrue(System.currentTimeMillis() - startMillis > 1900);
+    }
+
+    @Test
+    public void test_pollAndSweepTicks() throws InterruptedException {
+        final SlskdDownloadFileResponse a1 = fileResponse("a1", "InProgress", 100);
+        final List<SlskdGetDownloadResponse> othersBusy = IntStream.range(0, INITIAL_CONCURRENT_ACTIVE_DOWNLOADS - 1)
+                .mapToObj(i -> new SlskdGetDownloadResponse("other" + i, List.of(
+                        new SlskdDownloadDirectoryResponse("any", 1, List.of(
+                                minimalResponse("InProgress"))))))
+                .toList();
+        final List<SlskdGetDownloadResponse> allBusy = new ArrayList<>(othersBusy);
+        allBusy.add(aliceDownloading(a1));
+        when(client.getAllDownloads()).thenReturn(allBusy);
+        when(client.getDownloadsFromUserAsync("alice"))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(aliceDownloading(a1))))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(aliceDownloading(withState(a1, "Completed, Succeeded")))));
+
+        final BlockingQueue<List<String>> received = new LinkedBlockingQueue<>();
+        service.subscribe("alice", requests("a1"), (changes, active) ->
+                received.add(changes.stream().map(c -> c.current().state()).toList()));
+
+        // The sweep sees every user busy, so there are no slots to hand out
+        service.sweepAllDownloads();
+        final CompletableFuture<Void> slot = service.acquireDownloadSlot();
+        assertFalse(slot.isDone());
+        verify(client, never()).getDownloadsFromUserAsync(anyString());
+
+        // Polling only fetches the subscribed user...
+        service.pollSubscribedUsers();
+        assertEquals(List.of("InProgress"), received.poll(5, TimeUnit.SECONDS));
+        assertFalse(slot.isDone());
+
+        // ...and notices them finishing without waiting for the next sweep
+        service.pollSubscribedUsers();
+        assertEquals(List.of("Completed, Succeeded"), received.poll(5, TimeUnit.SECONDS));
+        slot.orTimeout(5, TimeUnit.SECONDS).join();
+
+        verify(client, times(1)).getAllDownloads();
+        verify(client, times(2)).getDownloadsFromUserAsync("alice");
+    }
+
+    @Test
+    public void test_searchFollowsPushedUpdates() {
+        final SlskdEventClient events = mock(SlskdEventClient.class);
+        when(events.isConnected()).thenReturn(true);
+        final SlskdService pushed = new SlskdService(client, new SearchScheduler(1, 0, 100),
+                SearchResultCache.inMemory(Duration.ofHours(1)), events);
+        final ArgumentCaptor<SlskdEventClient.Listener> listener = ArgumentCaptor.forClass(SlskdEventClient.Listener.class);
+        verify(events).addListener(listener.capture());
+
+        final UUID id = UUID.randomUUID();
+        when(client.search("artist album")).thenReturn(searchState(id, "InProgress", 0));
+
+        final CompletableFuture<List<ProcessorInputUser>> search = pushed.search("artist album");
+        // Updates for a search aren't listened for until it has started, so keep pushing until it's seen
+        for (int i = 0; i < 100 && !search.isDone(); i++) {
+            listener.getValue().onSearchUpdate(searchState(id, "Completed, Succeeded", 3));
+            FutureUtils.sleep(50);
+        }
+        search.orTimeout(5, TimeUnit.SECONDS).join();
+
+        // The pushed update finished the search, without ever polling for it
+        verify(client, never()).getSearchState(any());
+        verify(client, never()).stopSearch(any());
+        verify(client).getSearchInputs(id);
+    }
+
+    @Test
+    public void test_plateauedSearchesAreCached() {
+        final SlskdEventClient events = mock(SlskdEventClient.class);
+        when(events.isConnected()).thenReturn(true);
+        final SearchResultCache cache = SearchResultCache.inMemory(Duration.ofHours(1));
+        final SlskdService first = new SlskdService(client, new SearchScheduler(1, 0, 100), cache, events);
+        final ArgumentCaptor<SlskdEventClient.Listener> listener = ArgumentCaptor.forClass(SlskdEventClient.Listener.class);
+        verify(events).addListener(listener.capture());
+
+        final UUID id = UUID.randomUUID();
+        when(client.search("artist album")).thenReturn(searchState(id, "InProgress", 0));
+        when(client.getSearchInputs(id)).thenReturn(List.of(ProcessorInputUser.convert(
+                new SlskdSearchDetailResponse(1, true, 0, List.of(), 0, 0, 1, "alice", List.of(
+                        new SlskdSearchMatchResponse(1, "", "@@a\\Album\\01 One.flac", 20_000_000, false,
+                                Optional.empty(), Optional.empty(), Optional.empty()))))));
+
+        // The responses stop growing, but slskd never says the search has completed
+        final CompletableFuture<List<ProcessorInputUser>> search = first.search("artist album");
+        for (int i = 0; i < 400 && !search.isDone(); i++) {
+            listener.getValue().onSearchUpdate(searchState(id, "InProgress", 1));
+            FutureUtils.sleep(50);
+        }
+        assertEquals(1, search.orTimeout(5, TimeUnit.SECONDS).join().size());
+        verify(client).stopSearch(id);
+
+        // Another run doesn't search the network again
+        final SlskdService second = new SlskdService(client, new SearchScheduler(1, 0, 100), cache);
+        final List<ProcessorInputUser> cached = second.search("Artist - Album").orTimeout(5, TimeUnit.SECONDS).join();
+        assertEquals(List.of("alice"), cached.stream().map(u -> u.originalData().username()).toList());
+        verify(client, times(1)).search(any());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void test_subscriptionsReceiveOnlyTheirOwnChanges() throws InterruptedException {
+        final Map<String, BlockingQueue<List<String>>> received = Map.of(
+                "a", new LinkedBlockingQueue<>(), "b", new LinkedBlockingQueue<>(), "c", new LinkedBlockingQueue<>());
+        final Subscription a = service.subscribe("alice", requests("a1", "a2"), (changes, active) ->
+                received.get("a").add(changes.stream().map(TransferChange::filename).sorted().toList()));
+        service.subscribe("alice", requests("a3"), (changes, active) ->
+                received.get("b").add(changes.stream().map(TransferChange::filename).toList()));
+        service.subscribe("bob", requests("b1"), (changes, active) ->
+                received.get("c").add(changes.stream().map(TransferChange::filename).toList()));
+
+        final SlskdDownloadFileResponse a1 = fileResponse("a1", "Queued, Remotely", 0);
+        final SlskdDownloadFileResponse a2 = fileResponse("a2", "Queued, Remotely", 0);
+        final SlskdDownloadFileResponse a3 = fileResponse("a3", "Queued, Remotely", 0);
+        final SlskdDownloadFileResponse other = fileResponse("other", "Queued, Remotely", 0);
+        service.onDownloads(List.of(aliceDownloading(a1, a2, a3, other)), false);
+
+        // New subscriptions get everything they have, even if nothing is there
+        assertEquals(List.of("a1", "a2"), received.get("a").poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a3"), received.get("b").poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of(), received.get("c").poll(5, TimeUnit.SECONDS));
+
+        // Only a2 progresses, so only the first subscription hears about it
+        service.onDownloads(List.of(aliceDownloading(a1, withProgress(a2, 100), a3, other)), false);
+        assertEquals(List.of("a2"), received.get("a").poll(5, TimeUnit.SECONDS));
+
+        // Nothing changes, so nobody is called until the heartbeat
+        service.onDownloads(List.of(aliceDownloading(a1, withProgress(a2, 100), a3, other)), false);
+        service.onDownloads(List.of(aliceDownloading(a1, withProgress(a2, 100), a3, other)), true);
+        assertEquals(List.of(), received.get("a").poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of(), received.get("b").poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of(), received.get("c").poll(5, TimeUnit.SECONDS));
+        assertTrue(received.values().stream().allMatch(Collection::isEmpty));
+
+        service.unsubscribe(a);
+        service.unsubscribe(a);
+        assertEquals(2, service.subscriptionCount());
+    }
+
+    private static List<SlskdDownloadRequest> requests(final String... filenames) {
+
+        return Arrays.stream(filenames).map(f -> new SlskdDownloadRequest(f, 0)).toList();
+    }
+
+    private static SlskdGetDownloadResponse aliceDownloading(final SlskdDownloadFileResponse... files) {
+
+        return new SlskdGetDownloadResponse("alice", List.of(
+                new SlskdDownloadDirectoryResponse("dir", files.length, List.of(files))));
+    }
+
+    static SlskdDownloadFileResponse fileResponse(final String filename, final String state, final long bytesTransferred) {
+
+        return new SlskdDownloadFileResponse(UUID.randomUUID(), "alice",
+                null, filename, 1000, 0, state,
+                null, null, bytesTransferred, 0, null,
+                1000 - bytesTransferred, 0);
+    }
+
+    static SlskdDownloadFileResponse withProgress(final SlskdDownloadFileResponse f, final long bytesTransferred) {
+
+        return new SlskdDownloadFileResponse(f.id(), f.username(),
+                f.direction(), f.filename(), f.size(), f.startOffset(), "InProgress",
+                f.requestedAt(), f.enqueuedAt(), bytesTransferred, f.averageSpeed(), f.placeInQueue(),
+                f.size() - bytesTransferred, f.percentComplete());
+    }
+
+    private static SlskdSearchStateResponse searchState(final UUID id, final String state, final int responseCount) {
+
+        return new SlskdSearchStateResponse(null, responseCount * 10, id, state.contains("Completed"), 0,
+                responseCount, List.of(), "artist album", null, state, 0);
+    }
+
+    private static SlskdDownloadFileResponse withState(final SlskdDownloadFileResponse f, final String state) {
+
+        return new SlskdDownloadFileResponse(f.id(), f.username(),
+                f.direction(), f.filename(), f.size(), f.startOffset(), state,
+                f.requestedAt(), f.enqueuedAt(), f.bytesTransferred(), f.averageSpeed(), f.placeInQueue(),
+                f.bytesRemaining(), f.percentComplete());
+    }
+
     private static SlskdDownloadFileResponse minimalResponse(final String state) {
 
         return new SlskdDownloadFileResponse(null, null,
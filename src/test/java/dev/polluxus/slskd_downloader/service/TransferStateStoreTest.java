@@ -0,0 +1,73 @@
+package dev.polluxus.slskd_downloader.service;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadDirectoryResponse;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdGetDownloadResponse.SlskdDownloadFileResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static dev.polluxus.slskd_downloader.service.SlskdServiceTest.fileResponse;
+import static dev.polluxus.slskd_downloader.service.SlskdServiceTest.withProgress;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferStateStoreTest {
+
+    @Test
+    public void test_producesOnlyWhatChanged() {
+        final TransferStateStore store = new TransferStateStore();
+        final SlskdDownloadFileResponse a = fileResponse("a", "Queued, Remotely", 0);
+        final SlskdDownloadFileResponse b = fileResponse("b", "Queued, Remotely", 0);
+
+        final List<TransferChange> first = store.update(List.of("alice"), snapshot(a, b));
+        assertEquals(2, first.size());
+        assertTrue(first.stream().allMatch(TransferChange::isNew));
+        assertFalse(store.hasActiveTransfers("alice"));
+
+        // Nothing happened
+        assertEquals(List.of(), store.update(List.of("alice"), snapshot(a, b)));
+
+        // a starts downloading, b disappears
+        final SlskdDownloadFileResponse progressed = withProgress(a, 250);
+        final List<TransferChange> second = store.update(List.of("alice"), snapshot(progressed));
+        assertEquals(2, second.size());
+        final TransferChange aChange = second.stream().filter(c -> c.filename().equals("a")).findFirst().orElseThrow();
+        assertTrue(aChange.stateChanged());
+        assertEquals(250, aChange.bytesProgressed());
+        final TransferChange bChange = second.stream().filter(c -> c.filename().equals("b")).findFirst().orElseThrow();
+        assertTrue(bChange.isRemoved());
+        assertEquals(b.id(), bChange.id());
+
+        assertTrue(store.hasActiveTransfers("alice"));
+        assertEquals(1, store.activeUserCount());
+        assertEquals(List.of(progressed), store.transfersFrom("alice"));
+    }
+
+    @Test
+    public void test_countsActiveUsersFromSweepAndPolledUsers() {
+        final TransferStateStore store = new TransferStateStore();
+        final SlskdDownloadFileResponse a = withProgress(fileResponse("a", "Queued, Remotely", 0), 10);
+
+        store.onSweep(List.of(
+                new SlskdGetDownloadResponse("alice", List.of(new SlskdDownloadDirectoryResponse("dir", 1, List.of(a)))),
+                new SlskdGetDownloadResponse("bob", List.of(new SlskdDownloadDirectoryResponse("dir", 1, List.of(a))))));
+        assertEquals(2, store.activeUserCount());
+        assertTrue(store.hasActiveTransfers("bob"));
+
+        // Alice has finished since the sweep, which her own poll shows
+        store.update(List.of("alice"), List.of());
+        assertEquals(1, store.activeUserCount());
+        assertFalse(store.hasActiveTransfers("alice"));
+
+        // Once she's no longer polled, the sweep is all we have to go on
+        store.retain(Set.of());
+        assertEquals(2, store.activeUserCount());
+    }
+
+    private static List<SlskdGetDownloadResponse> snapshot(final SlskdDownloadFileResponse... files) {
+
+        return List.of(new SlskdGetDownloadResponse("alice", List.of(
+                new SlskdDownloadDirectoryResponse("dir", files.length, List.of(files)))));
+    }
+}
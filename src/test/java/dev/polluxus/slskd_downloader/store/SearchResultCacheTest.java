@@ -0,0 +1,88 @@
+package dev.polluxus.slskd_downloader.store;
+
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.util.FutureUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchResultCacheTest {
+
+    @Test
+    public void test_hitsAndMisses() {
+        final SearchResultCache cache = SearchResultCache.inMemory(Duration.ofHours(1));
+        final List<SlskdSearchDetailResponse> responses = List.of(response("alice"));
+
+        assertEquals(Optional.empty(), cache.get("Artist Album"));
+        cache.put("Artist Album", responses);
+        assertEquals(Optional.of(responses), cache.get("Artist Album"));
+        assertEquals(Optional.of(responses), cache.get("Artist Album"));
+
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void test_expiredEntriesAreMisses() {
+        final SearchResultCache cache = SearchResultCache.inMemory(Duration.ZERO);
+
+        cache.put("Artist Album", List.of(response("alice")));
+        FutureUtils.sleep(5);
+
+        assertEquals(Optional.empty(), cache.get("Artist Album"));
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void test_emptyResultsInvalidate() {
+        final SearchResultCache cache = SearchResultCache.inMemory(Duration.ofHours(1));
+
+        cache.put("Artist Album", List.of(response("alice")));
+        // Found nothing this time, so the old responses shouldn't be used either
+        cache.put("Artist Album", List.of());
+        assertEquals(Optional.empty(), cache.get("Artist Album"));
+
+        cache.put("Artist Album", List.of(response("alice")));
+        cache.invalidate("artist album");
+        assertEquals(Optional.empty(), cache.get("Artist Album"));
+    }
+
+    @Test
+    public void test_normalisedSearchesShareEntries() {
+        final SearchResultCache cache = SearchResultCache.inMemory(Duration.ofHours(1));
+        final List<SlskdSearchDetailResponse> responses = List.of(response("alice"));
+
+        assertEquals("artist album 2", SearchResultCache.normalize("  ARTIST - Album (2)  "));
+        // Full-width characters fold to their ordinary forms
+        assertEquals("abc", SearchResultCache.normalize("ＡＢＣ"));
+
+        cache.put("Artist - Album", responses);
+        assertEquals(Optional.of(responses), cache.get("artist album"));
+        assertEquals(Optional.of(responses), cache.get("ARTIST: ALBUM!"));
+        assertEquals(Optional.empty(), cache.get("Artist Album 2"));
+    }
+
+    @Test
+    public void test_longSearchesDontCollide() {
+        final SearchResultCache cache = SearchResultCache.inMemory(Duration.ofHours(1));
+        final String prefix = "a".repeat(200);
+        final List<SlskdSearchDetailResponse> first = List.of(response("alice"));
+        final List<SlskdSearchDetailResponse> second = List.of(response("bob"));
+
+        cache.put(prefix + " one", first);
+        cache.put(prefix + " two", second);
+
+        assertEquals(Optional.of(first), cache.get(prefix + " one"));
+        assertEquals(Optional.of(second), cache.get(prefix + " two"));
+    }
+
+    private static SlskdSearchDetailResponse response(final String username) {
+
+        return new SlskdSearchDetailResponse(0, true, 0, List.of(), 0, 0, 1, username, List.of());
+    }
+}
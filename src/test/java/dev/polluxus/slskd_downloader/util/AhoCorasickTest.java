@@ -0,0 +1,68 @@
+package dev.polluxus.slskd_downloader.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AhoCorasickTest {
+
+    @Test
+    public void test_findsEveryOccurrence() {
+
+        final Random random = new Random(3);
+        for (int round = 0; round < 500; round++) {
+            final List<String> patterns = new ArrayList<>();
+            for (int i = random.nextInt(6); i >= 0; i--) {
+                patterns.add(randomString(random, "abAB", random.nextInt(5)));
+            }
+            final String text = randomString(random, "abAB", random.nextInt(40));
+            final boolean ignoreCase = random.nextBoolean();
+            final AhoCorasick matcher = ignoreCase ? AhoCorasick.asciiCaseInsensitive(patterns) : AhoCorasick.of(patterns);
+
+            final List<List<Integer>> expected = new ArrayList<>();
+            for (int end = 1; end <= text.length(); end++) {
+                for (int p = 0; p < patterns.size(); p++) {
+                    final String pattern = patterns.get(p);
+                    final int start = end - pattern.length();
+                    if (!pattern.isEmpty() && start >= 0 && text.regionMatches(ignoreCase, start, pattern, 0, pattern.length())) {
+                        expected.add(List.of(p, start, end));
+                    }
+                }
+            }
+            final List<List<Integer>> found = new ArrayList<>();
+            matcher.scan(text, 0, text.length(), (p, start, end) -> found.add(List.of(p, start, end)));
+
+            // Order within the same end position doesn't matter
+            final Comparator<List<Integer>> order = Comparator.<List<Integer>>comparingInt(l -> l.get(2))
+                    .thenComparingInt(l -> l.get(0));
+            expected.sort(order);
+            found.sort(order);
+            assertEquals(expected, found, () -> STR."\{patterns} in \{text}");
+        }
+    }
+
+    @Test
+    public void test_onlyFoldsAscii() {
+
+        final AhoCorasick matcher = AhoCorasick.asciiCaseInsensitive(List.of("björk", "sigur rós"));
+
+        assertArrayEquals(new boolean[]{true, true}, matcher.occurring("BJöRK and SIGUR RóS"));
+        assertArrayEquals(new boolean[]{false, false}, matcher.occurring("BJÖRK and SIGUR RÓS"));
+        assertEquals(4, AhoCorasick.Ascii.indexOfIgnoreCase("xyz BJöRK", "björk", 0));
+        assertEquals(-1, AhoCorasick.Ascii.indexOfIgnoreCase("xyz BJÖRK", "björk", 0));
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package dev.polluxus.slskd_downloader.util;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+public class AudioFilesTest {
+
+    @ParameterizedTest
+    @MethodSource("testIsAudioArgs")
+    public void testIsAudio(final String testString, final boolean expected) {
+
+        assertEquals(expected, AudioFiles.isAudio(testString));
+    }
+
+    static Stream<Arguments> testIsAudioArgs() {
+
+        return Stream.of(
+                arguments("@@abcde\\Music\\Artist\\Album\\01 - Track.flac", true),
+                arguments("@@abcde\\Music\\Artist\\Album\\01 - Track.MP3", true),
+                arguments("@@abcde\\Music\\Artist\\Album\\cover.jpg", false),
+                arguments("@@abcde\\Music\\Artist\\Album\\Album.cue", false),
+                // The extension is only what follows the last dot of the file name itself
+                arguments("@@abcde\\Music\\Artist\\Album.flac\\notes", false)
+        );
+    }
+}
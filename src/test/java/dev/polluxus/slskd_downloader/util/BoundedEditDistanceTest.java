@@ -0,0 +1,113 @@
+package dev.polluxus.slskd_downloader.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import dev.polluxus.slskd_downloader.client.slskd.response.SlskdSearchDetailResponse;
+import dev.polluxus.slskd_downloader.config.JacksonConfig;
+import dev.polluxus.slskd_downloader.model.AlbumInfo;
+import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedEditDistanceTest {
+
+    private static final int[] THRESHOLDS = {0, 1, 4, 8};
+    // Request and response of each fixture
+    private static final String[][] FIXTURES = {
+            {"/slskd-processor-test-request-1.json", "/slskd-processor-test-response-1.json"},
+            {"/slskd-processor-request-demdike-tryptych.json", "/slskd-processor-response-demdike-tryptych.json"},
+    };
+
+    @Test
+    public void test_sameResultsAsCommonsTextOnFixtures() throws IOException {
+
+        final List<String> titles = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        for (var fixture : FIXTURES) {
+            titles.addAll(read(fixture[0], new TypeReference<AlbumInfo>() {}).tracks().stream()
+                    .map(t -> t.title().toLowerCase())
+                    .toList());
+            read(fixture[1], new TypeReference<List<SlskdSearchDetailResponse>>() {}).stream()
+                    .flatMap(r -> r.files().stream())
+                    .map(f -> FilenameUtils.getBaseName(f.filename()).toLowerCase())
+                    .forEach(names::add);
+        }
+        assertFalse(titles.isEmpty());
+        assertFalse(names.isEmpty());
+
+        int compared = 0;
+        for (var title : titles) {
+            final int threshold = Matchers.editDistanceThreshold(title);
+            final BoundedEditDistance compiled = BoundedEditDistance.compile(title, threshold);
+            final LevenshteinDistance expected = new LevenshteinDistance(threshold);
+            for (var name : names) {
+                assertEquals(expected.apply(title, name), compiled.apply(name), () -> STR."\{title} vs \{name}");
+                compared++;
+            }
+        }
+        assertTrue(compared > 10_000);
+    }
+
+    @Test
+    public void test_sameResultsAsCommonsTextOnRandomStrings() {
+
+        final Random random = new Random(17);
+        // Small alphabets so that there are plenty of near misses, and some characters outside Latin-1
+        final String alphabet = "abcde ’é漢";
+        for (int i = 0; i < 20_000; i++) {
+            final String pattern = randomString(random, alphabet, random.nextInt(80));
+            final String text = random.nextInt(4) == 0 ? mutate(random, alphabet, pattern) : randomString(random, alphabet, random.nextInt(80));
+            for (int threshold : THRESHOLDS) {
+                final Integer expected = new LevenshteinDistance(threshold).apply(pattern, text);
+                assertEquals(expected, BoundedEditDistance.compile(pattern, threshold).apply(text),
+                        () -> STR."\{pattern} vs \{text} at \{threshold}");
+            }
+        }
+    }
+
+    @Test
+    public void test_fullWidthPattern() {
+
+        final String pattern = "a".repeat(BoundedEditDistance.MAX_BIT_PARALLEL_LENGTH);
+        assertEquals(0, BoundedEditDistance.compile(pattern, 1).apply(pattern));
+        assertEquals(1, BoundedEditDistance.compile(pattern, 1).apply(pattern.substring(1)));
+        assertEquals(-1, BoundedEditDistance.compile(pattern, 1).apply("b" + pattern.substring(2) + "b"));
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String alphabet, String s) {
+
+        final StringBuilder sb = new StringBuilder(s);
+        final int edits = random.nextInt(10);
+        for (int i = 0; i < edits; i++) {
+            final int at = sb.isEmpty() ? 0 : random.nextInt(sb.length());
+            switch (sb.isEmpty() ? 0 : random.nextInt(3)) {
+                case 0 -> sb.insert(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                case 1 -> sb.deleteCharAt(at);
+                default -> sb.setCharAt(at, alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static <T> T read(String resource, TypeReference<T> type) throws IOException {
+
+        try (InputStream in = BoundedEditDistanceTest.class.getResourceAsStream(resource)) {
+            return JacksonConfig.MAPPER.readValue(in, type);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package dev.polluxus.slskd_downloader.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void test_identicalRequestsShareOneFuture() {
+        final SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofMinutes(1));
+        final AtomicInteger started = new AtomicInteger();
+        final CompletableFuture<String> work = new CompletableFuture<>();
+
+        final var first = flight.run("a", () -> { started.incrementAndGet(); return work; });
+        final var second = flight.run("a", () -> { started.incrementAndGet(); return new CompletableFuture<>(); });
+        work.complete("done");
+        // Completed recently, so this one is absorbed too
+        final var third = flight.run("a", () -> { started.incrementAndGet(); return new CompletableFuture<>(); });
+
+        assertSame(first, second);
+        assertSame(first, third);
+        assertEquals("done", third.join());
+        assertEquals(1, started.get());
+        assertEquals(2, flight.absorbed());
+    }
+
+    @Test
+    public void test_failuresAndExpiredResultsAreRetried() {
+        final SingleFlight<String, String> flight = new SingleFlight<>(Duration.ZERO);
+        final AtomicInteger started = new AtomicInteger();
+
+        final var failed = flight.run("a", () -> { started.incrementAndGet(); return CompletableFuture.failedFuture(new RuntimeException()); });
+        assertTrue(failed.isCompletedExceptionally());
+        final var retried = flight.run("a", () -> { started.incrementAndGet(); return CompletableFuture.completedFuture("ok"); });
+        assertEquals("ok", retried.join());
+        FutureUtils.sleep(5);
+        flight.run("a", () -> { started.incrementAndGet(); return CompletableFuture.completedFuture("again"); });
+
+        assertEquals(3, started.get());
+        assertEquals(0, flight.absorbed());
+    }
+
+    @Test
+    public void test_retainingForeverNeverRepeatsWork() {
+        final SingleFlight<String, String> flight = SingleFlight.retainingForever();
+        final AtomicInteger started = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++) {
+            flight.run("a", () -> { started.incrementAndGet(); return CompletableFuture.completedFuture("ok"); });
+        }
+
+        assertEquals(1, started.get());
+        assertEquals(99, flight.absorbed());
+    }
+}